@@ -39,7 +39,10 @@ public interface LibrePremiumPlugin {
 
     Audience getAudienceForID(UUID uuid);
 
-    void migrate(ReadDatabaseProvider from, WriteDatabaseProvider to);
+    /**
+     * @return Whether all users have been migrated
+     */
+    boolean migrate(ReadDatabaseProvider from, WriteDatabaseProvider to);
 
     Collection<ReadDatabaseProvider> getReadProviders();
 
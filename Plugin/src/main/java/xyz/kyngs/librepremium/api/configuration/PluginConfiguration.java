@@ -25,6 +25,44 @@ public interface PluginConfiguration {
 
     int getDatabasePort();
 
+    int getDatabaseAsyncThreads();
+
+    Collection<String> getDatabaseReplicas();
+
+    String getDatabaseReplicaRouting();
+
+    int getDatabaseReplicaPinTime();
+
+    int getWarmUpCount();
+
+    int getWarmUpMaxAge();
+
+    int getUserCacheMaximumSize();
+
+    int getUserCacheMaximumWeight();
+
+    int getUserCacheExpiry();
+
+    String getUserCacheExpiryPolicy();
+
+    String getDatabaseType();
+
+    String getDatabaseSQLiteFile();
+
+    boolean useWriteBehind();
+
+    int getWriteBehindInterval();
+
+    int getWriteBehindBatchSize();
+
+    int getBulkChunkSize();
+
+    int getArchiveAfter();
+
+    int getArchiveInterval();
+
+    int getSlowQueryThreshold();
+
     String getDefaultCryptoProvider();
 
     boolean kickOnWrongPassword();
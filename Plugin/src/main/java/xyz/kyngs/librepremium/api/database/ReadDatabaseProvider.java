@@ -1,7 +1,15 @@
 package xyz.kyngs.librepremium.api.database;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public interface ReadDatabaseProvider {
 
@@ -11,6 +19,95 @@ public interface ReadDatabaseProvider {
 
     User getByPremiumUUID(UUID uuid);
 
+    /**
+     * Loads every user into memory, use {@link #forEachUser(Consumer)} for anything that may be large.
+     */
     Collection<User> getAllUsers();
 
+    /**
+     * Passes every user to the consumer one by one, without holding all of them in memory.
+     * Providers should override this and stream the users from their storage, the default falls back to {@link #getAllUsers()}.
+     *
+     * @param consumer The consumer, called on the thread performing the read
+     */
+    default void forEachUser(Consumer<User> consumer) {
+        getAllUsers().forEach(consumer);
+    }
+
+    /**
+     * Looks up multiple users at once, users which do not exist are left out of the result.
+     * Providers should override this and fetch all the users in as few queries as possible.
+     *
+     * @param uuids The UUIDs to look up
+     * @return The found users, by their UUID
+     */
+    default Map<UUID, User> getByUUIDs(Collection<UUID> uuids) {
+        var users = new HashMap<UUID, User>();
+
+        for (UUID uuid : uuids) {
+            var user = getByUUID(uuid);
+
+            if (user != null) users.put(uuid, user);
+        }
+
+        return users;
+    }
+
+    /**
+     * Looks up multiple users at once, users which do not exist are left out of the result.
+     *
+     * @param names The nicknames to look up, case-insensitively
+     * @return The found users, by the nickname as passed in
+     */
+    default Map<String, User> getByNames(Collection<String> names) {
+        var users = new HashMap<String, User>();
+
+        for (String name : names) {
+            var user = getByName(name);
+
+            if (user != null) users.put(name, user);
+        }
+
+        return users;
+    }
+
+    /**
+     * The executor the async variants run on. Providers backed by a remote database should return their own,
+     * the common pool is only meant for simple providers.
+     */
+    default Executor getExecutor() {
+        return ForkJoinPool.commonPool();
+    }
+
+    default CompletableFuture<Map<UUID, User>> getByUUIDsAsync(Collection<UUID> uuids) {
+        return supplyAsync(() -> getByUUIDs(uuids));
+    }
+
+    default CompletableFuture<Map<String, User>> getByNamesAsync(Collection<String> names) {
+        return supplyAsync(() -> getByNames(names));
+    }
+
+    default CompletableFuture<User> getByNameAsync(String name) {
+        return supplyAsync(() -> getByName(name));
+    }
+
+    default CompletableFuture<User> getByUUIDAsync(UUID uuid) {
+        return supplyAsync(() -> getByUUID(uuid));
+    }
+
+    default CompletableFuture<User> getByPremiumUUIDAsync(UUID uuid) {
+        return supplyAsync(() -> getByPremiumUUID(uuid));
+    }
+
+    /**
+     * A rejected task fails its future, for example once the provider has been disabled, instead of throwing at the caller.
+     */
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, getExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
 }
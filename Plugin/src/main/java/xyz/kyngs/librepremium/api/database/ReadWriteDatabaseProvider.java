@@ -1,5 +1,12 @@
 package xyz.kyngs.librepremium.api.database;
 
+import java.util.concurrent.Executor;
+
 public interface ReadWriteDatabaseProvider extends ReadDatabaseProvider, WriteDatabaseProvider {
 
+    @Override
+    default Executor getExecutor() {
+        return ReadDatabaseProvider.super.getExecutor();
+    }
+
 }
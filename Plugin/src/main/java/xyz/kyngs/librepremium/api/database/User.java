@@ -3,16 +3,38 @@ package xyz.kyngs.librepremium.api.database;
 import xyz.kyngs.librepremium.api.crypto.HashedPassword;
 
 import java.sql.Timestamp;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 public class User {
 
+    /**
+     * The mutable parts of a user, used to track what has changed since the user was last persisted.
+     */
+    public enum Field {
+        PREMIUM_UUID,
+        HASHED_PASSWORD,
+        LAST_NICKNAME,
+        JOIN_DATE,
+        LAST_SEEN
+    }
+
     private final UUID uuid;
     private UUID premiumUUID;
     private HashedPassword hashedPassword;
     private String lastNickname;
     private Timestamp joinDate;
     private Timestamp lastSeen;
+    private final Set<Field> dirtyFields;
+    // The modification count at which each field has last been changed
+    private final Map<Field, Long> changedAt;
+    private long modifications;
+    private boolean persisted;
+    private long version;
 
     public User(UUID uuid, UUID premiumUUID, HashedPassword hashedPassword, String lastNickname, Timestamp joinDate, Timestamp lastSeen) {
         this.uuid = uuid;
@@ -21,13 +43,110 @@ public class User {
         this.lastNickname = lastNickname;
         this.joinDate = joinDate;
         this.lastSeen = lastSeen;
+        this.dirtyFields = EnumSet.noneOf(Field.class);
+        this.changedAt = new EnumMap<>(Field.class);
+        this.persisted = false;
+    }
+
+    private void changed(Object oldValue, Object newValue, Field field) {
+        if (Objects.equals(oldValue, newValue)) return;
+
+        dirtyFields.add(field);
+        changedAt.put(field, ++modifications);
+    }
+
+    /**
+     * @return A counter increased by every change. Read it before the dirty fields and the values are written,
+     * and pass it to {@link #markPersisted(Set, long)}, so that changes made during the write are not lost.
+     */
+    public synchronized long getModifications() {
+        return modifications;
+    }
+
+    /**
+     * @return A copy of the fields changed since the user was last persisted
+     */
+    public synchronized Set<Field> getDirtyFields() {
+        return EnumSet.copyOf(dirtyFields);
+    }
+
+    /**
+     * @return Whether this user has already been written to, or loaded from, the database
+     */
+    public synchronized boolean isPersisted() {
+        return persisted;
+    }
+
+    /**
+     * Marks the user as persisted, clearing all dirty fields. Should only be called by the database provider.
+     */
+    public synchronized void markPersisted() {
+        persisted = true;
+        dirtyFields.clear();
+    }
+
+    /**
+     * Marks the user as persisted, clearing all dirty fields which have not been changed again since the write started.
+     * Should only be called by the database provider.
+     *
+     * @param modifications The result of {@link #getModifications()} from before the write
+     */
+    public synchronized void markPersisted(long modifications) {
+        markPersisted(EnumSet.allOf(Field.class), modifications);
+    }
+
+    /**
+     * Marks the user as persisted, clearing only the fields that have been written and have not been changed again since.
+     * Should only be called by the database provider.
+     *
+     * @param written       The fields that have been written
+     * @param modifications The result of {@link #getModifications()} from before the write
+     */
+    public synchronized void markPersisted(Set<Field> written, long modifications) {
+        persisted = true;
+
+        for (Field field : written) {
+            if (changedAt.getOrDefault(field, 0L) <= modifications) dirtyFields.remove(field);
+        }
+    }
+
+    /**
+     * @return The version of the database row this user has last been synchronized with, used to detect writes from other proxies
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Should only be called by the database provider.
+     */
+    public synchronized void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Adopts the values another proxy has written to the database, keeping the fields which have been changed locally.
+     * The user is persisted afterwards, as it now corresponds to the stored row. Should only be called by the database provider.
+     *
+     * @param stored The user as it is currently stored in the database
+     */
+    public synchronized void mergeFrom(User stored) {
+        if (!dirtyFields.contains(Field.PREMIUM_UUID)) premiumUUID = stored.getPremiumUUID();
+        if (!dirtyFields.contains(Field.HASHED_PASSWORD)) hashedPassword = stored.getHashedPassword();
+        if (!dirtyFields.contains(Field.LAST_NICKNAME)) lastNickname = stored.getLastNickname();
+        if (!dirtyFields.contains(Field.JOIN_DATE)) joinDate = stored.getJoinDate();
+        if (!dirtyFields.contains(Field.LAST_SEEN)) lastSeen = stored.getLastSeen();
+
+        version = stored.getVersion();
+        persisted = true;
     }
 
     public Timestamp getJoinDate() {
         return joinDate;
     }
 
-    public void setJoinDate(Timestamp joinDate) {
+    public synchronized void setJoinDate(Timestamp joinDate) {
+        changed(this.joinDate, joinDate, Field.JOIN_DATE);
         this.joinDate = joinDate;
     }
 
@@ -35,7 +154,8 @@ public class User {
         return lastSeen;
     }
 
-    public void setLastSeen(Timestamp lastSeen) {
+    public synchronized void setLastSeen(Timestamp lastSeen) {
+        changed(this.lastSeen, lastSeen, Field.LAST_SEEN);
         this.lastSeen = lastSeen;
     }
 
@@ -43,7 +163,8 @@ public class User {
         return hashedPassword;
     }
 
-    public void setHashedPassword(HashedPassword hashedPassword) {
+    public synchronized void setHashedPassword(HashedPassword hashedPassword) {
+        changed(this.hashedPassword, hashedPassword, Field.HASHED_PASSWORD);
         this.hashedPassword = hashedPassword;
     }
 
@@ -55,7 +176,8 @@ public class User {
         return premiumUUID;
     }
 
-    public void setPremiumUUID(UUID premiumUUID) {
+    public synchronized void setPremiumUUID(UUID premiumUUID) {
+        changed(this.premiumUUID, premiumUUID, Field.PREMIUM_UUID);
         this.premiumUUID = premiumUUID;
     }
 
@@ -63,7 +185,8 @@ public class User {
         return lastNickname;
     }
 
-    public void setLastNickname(String lastNickname) {
+    public synchronized void setLastNickname(String lastNickname) {
+        changed(this.lastNickname, lastNickname, Field.LAST_NICKNAME);
         this.lastNickname = lastNickname;
     }
 
@@ -1,13 +1,65 @@
 package xyz.kyngs.librepremium.api.database;
 
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 public interface WriteDatabaseProvider {
 
     void saveUser(User user);
 
-    void saveUsers(Collection<User> users);
+    /**
+     * Saves many users at once, such as during a migration. Unlike {@link #saveUser(User)}, failures are not queued for later.
+     *
+     * @return The amount of users saved, the others have not been written
+     */
+    int saveUsers(Collection<User> users);
 
     void deleteUser(User user);
 
+    /**
+     * See {@link ReadDatabaseProvider#getExecutor()}
+     */
+    default Executor getExecutor() {
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Saves the user on the {@link #getExecutor()}, the future completes once the save has been written or queued.
+     *
+     * @return A future completed exceptionally if the save fails
+     */
+    default CompletableFuture<Void> saveUserAsync(User user) {
+        return runAsync(() -> saveUser(user));
+    }
+
+    default CompletableFuture<Integer> saveUsersAsync(Collection<User> users) {
+        return supplyAsync(() -> saveUsers(users));
+    }
+
+    default CompletableFuture<Void> deleteUserAsync(User user) {
+        return runAsync(() -> deleteUser(user));
+    }
+
+    /**
+     * See {@link ReadDatabaseProvider#getExecutor()}, a rejected task fails its future instead of throwing at the caller.
+     */
+    private CompletableFuture<Void> runAsync(Runnable task) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, getExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
 }
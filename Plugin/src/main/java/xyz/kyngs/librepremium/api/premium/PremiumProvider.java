@@ -1,7 +1,25 @@
 package xyz.kyngs.librepremium.api.premium;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 public interface PremiumProvider {
 
     PremiumUser getUserForName(String name) throws PremiumException;
 
+    /**
+     * Same as {@link #getUserForName(String)}, but does not block the caller.
+     *
+     * @return A future completed exceptionally with {@link PremiumException} on failure
+     */
+    default CompletableFuture<PremiumUser> getUserForNameAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getUserForName(name);
+            } catch (PremiumException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
 }
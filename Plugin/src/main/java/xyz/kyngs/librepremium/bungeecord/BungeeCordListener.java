@@ -30,33 +30,56 @@ public class BungeeCordListener extends AuthenticListeners<BungeeCordLibrePremiu
 
     @EventHandler
     public void onPreLogin(PreLoginEvent event) {
-        var result = onPreLogin(event.getConnection().getName());
-
-        switch (result.state()) {
-            case DENIED -> {
-                assert result.message() != null;
-                event.setCancelled(true);
-                event.setCancelReason(plugin.getSerializer().serialize(result.message()));
+        // Bungee holds the login until the intent is completed, the pipeline itself runs on our executors
+        event.registerIntent(plugin);
+
+        onPreLogin(event.getConnection().getName()).whenComplete((result, throwable) -> {
+            try {
+                if (throwable != null) {
+                    event.setCancelled(true);
+                    event.setCancelReason(plugin.getSerializer().serialize(handleLoginFailure(event.getConnection().getName(), throwable)));
+                    return;
+                }
+
+                switch (result.state()) {
+                    case DENIED -> {
+                        assert result.message() != null;
+                        event.setCancelled(true);
+                        event.setCancelReason(plugin.getSerializer().serialize(result.message()));
+                    }
+                    case FORCE_ONLINE -> event.getConnection().setOnlineMode(true);
+                    case FORCE_OFFLINE -> event.getConnection().setOnlineMode(false);
+                }
+            } finally {
+                event.completeIntent(plugin);
             }
-            case FORCE_ONLINE -> event.getConnection().setOnlineMode(true);
-            case FORCE_OFFLINE -> event.getConnection().setOnlineMode(false);
-        }
+        });
 
     }
 
     @EventHandler
     public void onProfileRequest(LoginEvent event) {
-        var profile = plugin.getLibrePremium().getDatabaseProvider().getByName(event.getConnection().getName());
+        event.registerIntent(plugin);
+
         PendingConnection connection = event.getConnection();
 
-        Class<?> clazz = connection.getClass();
-        try {
-            Field field = clazz.getDeclaredField("uniqueId");
-            field.setAccessible(true);
-            field.set(connection, profile.getUuid());
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new RuntimeException(e);
-        }
+        plugin.getLibrePremium().getDatabaseProvider().getByNameAsync(connection.getName()).whenComplete((profile, throwable) -> {
+            try {
+                if (throwable != null) throw throwable;
+
+                if (profile == null) throw new IllegalStateException("The user %s has not been created during the pre-login".formatted(connection.getName()));
+
+                Class<?> clazz = connection.getClass();
+                Field field = clazz.getDeclaredField("uniqueId");
+                field.setAccessible(true);
+                field.set(connection, profile.getUuid());
+            } catch (Throwable t) {
+                event.setCancelled(true);
+                event.setCancelReason(plugin.getSerializer().serialize(handleLoginFailure(connection.getName(), t)));
+            } finally {
+                event.completeIntent(plugin);
+            }
+        });
     }
 
     @EventHandler
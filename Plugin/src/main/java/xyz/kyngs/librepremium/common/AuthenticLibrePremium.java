@@ -2,10 +2,13 @@ package xyz.kyngs.librepremium.common;
 
 import co.aikar.commands.CommandIssuer;
 import co.aikar.commands.CommandManager;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.google.gson.Gson;
 import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.text.Component;
 import org.bstats.charts.CustomChart;
+import org.bstats.charts.SimplePie;
+import org.bstats.charts.SingleLineChart;
 import org.jetbrains.annotations.Nullable;
 import xyz.kyngs.easydb.EasyDB;
 import xyz.kyngs.easydb.EasyDBConfig;
@@ -31,7 +34,11 @@ import xyz.kyngs.librepremium.common.config.HoconMessages;
 import xyz.kyngs.librepremium.common.config.HoconPluginConfiguration;
 import xyz.kyngs.librepremium.common.crypto.BCrypt2ACryptoProvider;
 import xyz.kyngs.librepremium.common.crypto.SHA256CryptoProvider;
+import xyz.kyngs.librepremium.common.database.AuthenticDatabaseProvider;
 import xyz.kyngs.librepremium.common.database.MySQLDatabaseProvider;
+import xyz.kyngs.librepremium.common.database.PostgreSQLDatabaseProvider;
+import xyz.kyngs.librepremium.common.database.SQLiteDatabaseProvider;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigrationException;
 import xyz.kyngs.librepremium.common.event.AuthenticEventProvider;
 import xyz.kyngs.librepremium.common.event.events.AuthenticLimboServerChooseEvent;
 import xyz.kyngs.librepremium.common.event.events.AuthenticLobbyServerChooseEvent;
@@ -39,12 +46,18 @@ import xyz.kyngs.librepremium.common.migrate.AuthMeReadProvider;
 import xyz.kyngs.librepremium.common.migrate.JPremiumReadProvider;
 import xyz.kyngs.librepremium.common.service.mojang.MojangPremiumProvider;
 import xyz.kyngs.librepremium.common.util.GeneralUtil;
+import xyz.kyngs.librepremium.common.util.LatencyHistogram;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
 
@@ -59,7 +72,7 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
     private HoconPluginConfiguration configuration;
     private HoconMessages messages;
     private AuthenticAuthorizationProvider authorizationProvider;
-    private MySQLDatabaseProvider databaseProvider;
+    private AuthenticDatabaseProvider databaseProvider;
     private CommandProvider commandProvider;
 
     protected AuthenticLibrePremium() {
@@ -87,10 +100,23 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
     }
 
     @Override
-    public MySQLDatabaseProvider getDatabaseProvider() {
+    public AuthenticDatabaseProvider getDatabaseProvider() {
         return databaseProvider;
     }
 
+    /**
+     * @return All caches of the plugin, by a human-readable name
+     */
+    public Map<String, Cache<?, ?>> getCaches() {
+        var caches = new LinkedHashMap<>(databaseProvider.getCaches());
+
+        caches.put("mojang", premiumProvider.getCache());
+        caches.put("rate-limiter", commandProvider.getLimiter().getCache());
+        caches.put("confirmations", commandProvider.getConfirmCache());
+
+        return caches;
+    }
+
     @Override
     public MojangPremiumProvider getPremiumProvider() {
         return premiumProvider;
@@ -146,7 +172,21 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
         logger.info("Connecting to the database...");
 
         try {
-            databaseProvider = new MySQLDatabaseProvider(configuration, logger);
+            databaseProvider = switch (configuration.getDatabaseType().toLowerCase()) {
+                case "mysql" -> new MySQLDatabaseProvider(configuration, logger);
+                case "postgresql" -> new PostgreSQLDatabaseProvider(configuration, logger);
+                case "sqlite" -> new SQLiteDatabaseProvider(configuration, logger, new File(getDataFolder(), configuration.getDatabaseSQLiteFile()));
+                default -> {
+                    logger.error("Unknown database type %s, please use either mysql, postgresql or sqlite".formatted(configuration.getDatabaseType()));
+                    System.exit(1);
+                    yield null;
+                }
+            };
+        } catch (SchemaMigrationException e) {
+            var cause = GeneralUtil.getFurthestCause(e);
+            logger.error("!! FAILED TO MIGRATE THE DATABASE SCHEMA, REFUSING TO START ON A PARTIALLY MIGRATED SCHEMA !!");
+            logger.error("Please fix the cause and restart, the migration continues where it stopped. Cause: %s: %s".formatted(cause.getClass().getSimpleName(), cause.getMessage()));
+            System.exit(1);
         } catch (Exception e) {
             var cause = GeneralUtil.getFurthestCause(e);
             logger.error("!! THIS IS NOT AN ERROR CAUSED BY LIBREPREMIUM !!");
@@ -154,14 +194,40 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
             System.exit(1);
         }
 
+        if (!databaseProvider.isAvailable()) {
+            logger.error("!! THIS IS NOT AN ERROR CAUSED BY LIBREPREMIUM !!");
+            logger.error("Failed to connect to the database, please check that it is running and reachable");
+            System.exit(1);
+        }
+
         logger.info("Successfully connected to the database");
 
+        if (configuration.getWarmUpCount() > 0) {
+            databaseProvider.warmUp(configuration.getWarmUpCount(), configuration.getWarmUpMaxAge());
+        }
+
         checkAndMigrate();
 
         authorizationProvider = new AuthenticAuthorizationProvider(this);
         commandProvider = new CommandProvider(this);
 
-        initMetrics();
+        initMetrics(
+                new SimplePie("database_type", () -> configuration.getDatabaseType().toLowerCase()),
+                new SingleLineChart("database_p99_latency", this::getDatabaseLatency)
+        );
+    }
+
+    /**
+     * @return The worst p99 latency of the database queries in milliseconds
+     */
+    private int getDatabaseLatency() {
+        var worst = 0L;
+
+        for (LatencyHistogram histogram : databaseProvider.getLatencies().values()) {
+            worst = Math.max(worst, histogram.getPercentile(0.99));
+        }
+
+        return (int) TimeUnit.MICROSECONDS.toMillis(worst);
     }
 
     private void checkAndMigrate() {
@@ -212,9 +278,11 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
 
                     logger.info("Starting data conversion... This may take a while!");
 
-                    migrate(provider, databaseProvider);
-
-                    logger.info("Migration complete, cleaning up!");
+                    if (migrate(provider, databaseProvider)) {
+                        logger.info("Migration complete, cleaning up!");
+                    } else {
+                        logger.error("Migration incomplete, the users which failed have not been migrated, cleaning up!");
+                    }
 
                 } finally {
                     easyDB.stop();
@@ -237,6 +305,7 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
     }
 
     protected void disable() {
+        premiumProvider.disable();
         databaseProvider.disable();
     }
 
@@ -288,15 +357,32 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
         try {
             return getPremiumProvider().getUserForName(username);
         } catch (PremiumException e) {
-            throw new InvalidCommandArgument(getMessages().getMessage(
-                    switch (e.getIssue()) {
-                        case THROTTLED -> "error-premium-throttled";
-                        default -> "error-premium-unknown";
-                    }
-            ));
+            throw toInvalidCommandArgument(e);
         }
     }
 
+    /**
+     * The non-blocking variant of {@link #getUserOrThrowICA(String)}, the future is completed exceptionally with {@link InvalidCommandArgument} instead.
+     */
+    public CompletableFuture<PremiumUser> getUserOrThrowICAAsync(String username) {
+        return getPremiumProvider().getUserForNameAsync(username).exceptionally(throwable -> {
+            var cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+            if (cause instanceof PremiumException e) throw toInvalidCommandArgument(e);
+
+            throw cause instanceof RuntimeException runtime ? runtime : new CompletionException(cause);
+        });
+    }
+
+    private InvalidCommandArgument toInvalidCommandArgument(PremiumException e) {
+        return new InvalidCommandArgument(getMessages().getMessage(
+                switch (e.getIssue()) {
+                    case THROTTLED -> "error-premium-throttled";
+                    default -> "error-premium-unknown";
+                }
+        ));
+    }
+
     protected abstract void initMetrics(CustomChart... charts);
 
     public abstract String chooseLobbyDefault();
@@ -322,8 +408,39 @@ public abstract class AuthenticLibrePremium implements LibrePremiumPlugin {
     }
 
     @Override
-    public void migrate(ReadDatabaseProvider from, WriteDatabaseProvider to) {
-        to.saveUsers(from.getAllUsers());
+    public boolean migrate(ReadDatabaseProvider from, WriteDatabaseProvider to) {
+        // Written in chunks, so that the source can be streamed instead of being loaded into memory at once
+        var chunkSize = Math.max(1, configuration.getBulkChunkSize());
+        var chunk = new ArrayList<User>(chunkSize);
+        var read = new AtomicInteger();
+        var migrated = new AtomicInteger();
+        var start = System.currentTimeMillis();
+
+        from.forEachUser(user -> {
+            chunk.add(user);
+
+            if (chunk.size() >= chunkSize) {
+                read.addAndGet(chunk.size());
+                var count = migrated.addAndGet(to.saveUsers(List.copyOf(chunk)));
+                chunk.clear();
+
+                var seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+                logger.info("Migrated %d users (%d users/s)".formatted(count, count / seconds));
+            }
+        });
+
+        if (!chunk.isEmpty()) {
+            read.addAndGet(chunk.size());
+            migrated.addAndGet(to.saveUsers(chunk));
+        }
+
+        logger.info("Migrated %d users in total, took %d ms".formatted(migrated.get(), System.currentTimeMillis() - start));
+
+        var failed = read.get() - migrated.get();
+
+        if (failed > 0) logger.error("Failed to migrate %d of %d users, see the errors above".formatted(failed, read.get()));
+
+        return failed == 0;
     }
 
     @Override
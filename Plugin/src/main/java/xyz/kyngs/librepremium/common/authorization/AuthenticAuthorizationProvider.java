@@ -41,9 +41,8 @@ public class AuthenticAuthorizationProvider implements AuthorizationProvider {
     public void startTracking(UUID uuid, Audience audience) {
         unAuthorized.add(uuid);
 
-        plugin.delay(() -> {
-            sendInfoMessage(plugin.getDatabaseProvider().getByUUID(uuid), audience);
-        }, 250);
+        plugin.delay(() -> plugin.getDatabaseProvider().getByUUIDAsync(uuid)
+                .thenAccept(user -> sendInfoMessage(user, audience)), 250);
     }
 
     private void sendInfoMessage(User user, Audience audience) {
@@ -65,10 +64,13 @@ public class AuthenticAuthorizationProvider implements AuthorizationProvider {
     }
 
     public void notifyUnauthorized() {
-        for (UUID uuid : unAuthorized) {
-            var audience = plugin.getAudienceForID(uuid);
+        if (unAuthorized.isEmpty()) return;
 
-            sendInfoMessage(plugin.getDatabaseProvider().getByUUID(uuid), audience);
-        }
+        plugin.getDatabaseProvider().getByUUIDsAsync(Set.copyOf(unAuthorized))
+                .thenAccept(users -> users.forEach((uuid, user) -> {
+                    var audience = plugin.getAudienceForID(uuid);
+
+                    if (audience != null) sendInfoMessage(user, audience);
+                }));
     }
 }
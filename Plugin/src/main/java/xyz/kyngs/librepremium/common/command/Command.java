@@ -1,6 +1,7 @@
 package xyz.kyngs.librepremium.common.command;
 
 import co.aikar.commands.BaseCommand;
+import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.text.TextComponent;
 import xyz.kyngs.librepremium.api.Logger;
 import xyz.kyngs.librepremium.api.configuration.Messages;
@@ -9,7 +10,11 @@ import xyz.kyngs.librepremium.api.crypto.HashedPassword;
 import xyz.kyngs.librepremium.api.database.User;
 import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 import xyz.kyngs.librepremium.common.authorization.AuthenticAuthorizationProvider;
-import xyz.kyngs.librepremium.common.database.MySQLDatabaseProvider;
+import xyz.kyngs.librepremium.common.database.AuthenticDatabaseProvider;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class Command extends BaseCommand {
 
@@ -19,7 +24,7 @@ public class Command extends BaseCommand {
         this.plugin = plugin;
     }
 
-    protected MySQLDatabaseProvider getDatabaseProvider() {
+    protected AuthenticDatabaseProvider getDatabaseProvider() {
         return plugin.getDatabaseProvider();
     }
 
@@ -45,6 +50,26 @@ public class Command extends BaseCommand {
         }
     }
 
+    /**
+     * Loads the user of the issuer without blocking the command thread. The user has been loaded during the login, so it is usually cached.
+     * A user loaded from the database continues on another thread, the commands hash passwords, which must not occupy the database threads.
+     */
+    protected CompletableFuture<User> getUser(UUID uuid) {
+        var future = getDatabaseProvider().getByUUIDAsync(uuid);
+
+        if (!future.isDone()) future = future.thenApplyAsync(Function.identity());
+
+        return future.thenApply(user -> {
+            if (user == null) throw new InvalidCommandArgument(getMessage("error-unknown-user"));
+
+            return user;
+        });
+    }
+
+    protected void handleAsync(Audience audience, CompletableFuture<?> future) {
+        plugin.getCommandProvider().handleAsync(audience, future);
+    }
+
     protected CryptoProvider getCrypto(HashedPassword password) {
         return plugin.getCryptoProvider(password.algo());
     }
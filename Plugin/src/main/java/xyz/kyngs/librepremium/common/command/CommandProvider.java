@@ -15,10 +15,13 @@ import xyz.kyngs.librepremium.common.command.commands.premium.PremiumConfirmComm
 import xyz.kyngs.librepremium.common.command.commands.premium.PremiumDisableCommand;
 import xyz.kyngs.librepremium.common.command.commands.premium.PremiumEnableCommand;
 import xyz.kyngs.librepremium.common.command.commands.staff.LibrePremiumCommand;
+import xyz.kyngs.librepremium.common.database.DatabaseUnavailableException;
 import xyz.kyngs.librepremium.common.util.RateLimiter;
 
 import java.util.HashMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 public class CommandProvider {
@@ -48,33 +51,10 @@ public class CommandProvider {
 
         locales.addMessageStrings(locales.getDefaultLocale(), localeMap);
 
-        var contexts = manager.getCommandContexts();
-
-        contexts.registerIssuerAwareContext(User.class, context -> {
-            var uuid = (UUID) context.getResolvedArg(UUID.class);
-
-            if (uuid == null) return null;
-
-            return plugin.getDatabaseProvider().getByUUID(uuid);
-        });
-
-        manager.setDefaultExceptionHandler((command, registeredCommand, sender, args, t) -> {
-            if (!(t instanceof xyz.kyngs.librepremium.common.command.InvalidCommandArgument ourEx)) {
-                var logger = plugin.getLogger();
-
-                logger.error("An unexpected exception occurred while performing command, please attach the stacktrace below and report this issue.");
-
-                t.printStackTrace();
-
-                return false;
-            }
-
-            plugin.getFromIssuer(sender).sendMessage(ourEx.getUserFuckUp());
-
-            return true;
-        }, false);
+        manager.setDefaultExceptionHandler((command, registeredCommand, sender, args, t) -> handleException(plugin.getFromIssuer(sender), t), false);
 
         confirmCache = Caffeine.newBuilder()
+                .recordStats()
                 .expireAfterWrite(5, TimeUnit.MINUTES)
                 .build();
 
@@ -88,6 +68,37 @@ public class CommandProvider {
 
     }
 
+    public boolean handleException(Audience audience, Throwable t) {
+        if (t instanceof DatabaseUnavailableException) {
+            audience.sendMessage(plugin.getMessages().getMessage("error-database-unavailable"));
+            return true;
+        }
+
+        if (!(t instanceof xyz.kyngs.librepremium.common.command.InvalidCommandArgument ourEx)) {
+            var logger = plugin.getLogger();
+
+            logger.error("An unexpected exception occurred while performing command, please attach the stacktrace below and report this issue.");
+
+            t.printStackTrace();
+
+            return false;
+        }
+
+        audience.sendMessage(ourEx.getUserFuckUp());
+
+        return true;
+    }
+
+    /**
+     * ACF only sees exceptions thrown on the command thread, this reports the ones thrown by the chained database calls the same way.
+     */
+    public void handleAsync(Audience audience, CompletableFuture<?> future) {
+        future.exceptionally(throwable -> {
+            handleException(audience, throwable instanceof CompletionException ? throwable.getCause() : throwable);
+            return null;
+        });
+    }
+
     public void registerConfirm(UUID uuid) {
         confirmCache.put(uuid, new Object());
     }
@@ -98,11 +109,10 @@ public class CommandProvider {
 
         audience.sendMessage(plugin.getMessages().getMessage("info-enabling"));
 
-        LibrePremiumCommand.enablePremium(audience, user, plugin);
-
-        plugin.getDatabaseProvider().saveUser(user);
-
-        plugin.kick(uuid, plugin.getMessages().getMessage("kick-premium-info-enabled"));
+        handleAsync(audience, LibrePremiumCommand.enablePremium(audience, user, plugin)
+                .thenCompose(v -> plugin.getDatabaseProvider().saveUserAsync(user))
+                .thenRun(() -> plugin.kick(uuid, plugin.getMessages().getMessage("kick-premium-info-enabled")))
+        );
 
     }
 
@@ -114,6 +124,10 @@ public class CommandProvider {
         return ACF_SERIALIZER.serialize(getMessage(key));
     }
 
+    public Cache<UUID, Object> getConfirmCache() {
+        return confirmCache;
+    }
+
     public RateLimiter<UUID> getLimiter() {
         return limiter;
     }
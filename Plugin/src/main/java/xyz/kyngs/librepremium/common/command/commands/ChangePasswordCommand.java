@@ -2,7 +2,6 @@ package xyz.kyngs.librepremium.common.command.commands;
 
 import co.aikar.commands.annotation.*;
 import net.kyori.adventure.audience.Audience;
-import xyz.kyngs.librepremium.api.database.User;
 import xyz.kyngs.librepremium.api.event.events.PasswordChangeEvent;
 import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 import xyz.kyngs.librepremium.common.command.Command;
@@ -20,27 +19,30 @@ public class ChangePasswordCommand extends Command {
     @Default
     @Syntax("<oldPassword> <newPassword>")
     @CommandCompletion("oldPassword newPassword")
-    public void onPasswordChange(Audience sender, UUID id, User user, String oldPass, @Single String newPass) {
-        checkAuthorized(user);
+    public void onPasswordChange(Audience sender, UUID id, String oldPass, @Single String newPass) {
+        handleAsync(sender, getUser(id).thenCompose(user -> {
+            checkAuthorized(user);
 
-        sender.sendMessage(getMessage("info-editing"));
+            sender.sendMessage(getMessage("info-editing"));
 
-        var hashed = user.getHashedPassword();
-        var crypto = getCrypto(hashed);
+            var hashed = user.getHashedPassword();
+            var crypto = getCrypto(hashed);
 
-        if (!crypto.matches(oldPass, hashed)) {
-            throw new InvalidCommandArgument(getMessage("error-password-wrong"));
-        }
+            if (!crypto.matches(oldPass, hashed)) {
+                throw new InvalidCommandArgument(getMessage("error-password-wrong"));
+            }
 
-        var defaultProvider = plugin.getDefaultCryptoProvider();
+            var defaultProvider = plugin.getDefaultCryptoProvider();
 
-        user.setHashedPassword(defaultProvider.createHash(newPass));
+            user.setHashedPassword(defaultProvider.createHash(newPass));
 
-        getDatabaseProvider().saveUser(user);
+            return getDatabaseProvider().saveUserAsync(user)
+                    .thenRun(() -> {
+                        sender.sendMessage(getMessage("info-edited"));
 
-        sender.sendMessage(getMessage("info-edited"));
-
-        plugin.getEventProvider().fire(PasswordChangeEvent.class, new AuthenticPasswordChangeEvent(user, sender, hashed));
+                        plugin.getEventProvider().fire(PasswordChangeEvent.class, new AuthenticPasswordChangeEvent(user, sender, hashed));
+                    });
+        }));
     }
 
 }
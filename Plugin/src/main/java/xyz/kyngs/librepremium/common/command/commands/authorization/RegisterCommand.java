@@ -2,7 +2,6 @@ package xyz.kyngs.librepremium.common.command.commands.authorization;
 
 import co.aikar.commands.annotation.*;
 import net.kyori.adventure.audience.Audience;
-import xyz.kyngs.librepremium.api.database.User;
 import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 import xyz.kyngs.librepremium.common.command.InvalidCommandArgument;
 
@@ -17,26 +16,27 @@ public class RegisterCommand extends AuthorizationCommand {
     @Default
     @Syntax("<password> <passwordRepeat>")
     @CommandCompletion("password password")
-    public void onRegister(Audience sender, UUID uuid, User user, @Single String password, String passwordRepeat) {
-        checkUnauthorized(user);
+    public void onRegister(Audience sender, UUID uuid, @Single String password, String passwordRepeat) {
+        handleAsync(sender, getUser(uuid).thenCompose(user -> {
+            checkUnauthorized(user);
 
-        if (!password.contentEquals(passwordRepeat))
-            throw new InvalidCommandArgument(getMessage("error-password-not-match"));
-        if (user.isRegistered()) throw new InvalidCommandArgument(getMessage("error-already-registered"));
+            if (!password.contentEquals(passwordRepeat))
+                throw new InvalidCommandArgument(getMessage("error-password-not-match"));
+            if (user.isRegistered()) throw new InvalidCommandArgument(getMessage("error-already-registered"));
 
-        sender.sendMessage(getMessage("info-registering"));
+            sender.sendMessage(getMessage("info-registering"));
 
-        var provider = plugin.getDefaultCryptoProvider();
+            var provider = plugin.getDefaultCryptoProvider();
 
-        user.setHashedPassword(provider.createHash(password));
-
-        getDatabaseProvider().saveUser(user);
-
-        sender.sendMessage(getMessage("info-registered"));
-
-        getAuthorizationProvider().authorize(uuid, user, sender);
+            user.setHashedPassword(provider.createHash(password));
 
+            return getDatabaseProvider().saveUserAsync(user)
+                    .thenRun(() -> {
+                        sender.sendMessage(getMessage("info-registered"));
 
+                        getAuthorizationProvider().authorize(uuid, user, sender);
+                    });
+        }));
     }
 
 }
@@ -3,7 +3,6 @@ package xyz.kyngs.librepremium.common.command.commands.premium;
 import co.aikar.commands.annotation.CommandAlias;
 import co.aikar.commands.annotation.Default;
 import net.kyori.adventure.audience.Audience;
-import xyz.kyngs.librepremium.api.database.User;
 import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 
 import java.util.UUID;
@@ -15,11 +14,13 @@ public class PremiumConfirmCommand extends PremiumCommand {
     }
 
     @Default
-    public void onPremiumConfirm(Audience sender, UUID uuid, User user) {
-        checkAuthorized(user);
-        checkCracked(user);
+    public void onPremiumConfirm(Audience sender, UUID uuid) {
+        handleAsync(sender, getUser(uuid).thenAccept(user -> {
+            checkAuthorized(user);
+            checkCracked(user);
 
-        plugin.getCommandProvider().onConfirm(uuid, sender, user);
+            plugin.getCommandProvider().onConfirm(uuid, sender, user);
+        }));
     }
 
 }
@@ -3,7 +3,6 @@ package xyz.kyngs.librepremium.common.command.commands.premium;
 import co.aikar.commands.annotation.CommandAlias;
 import co.aikar.commands.annotation.Default;
 import net.kyori.adventure.audience.Audience;
-import xyz.kyngs.librepremium.api.database.User;
 import xyz.kyngs.librepremium.api.event.events.PremiumLoginSwitchEvent;
 import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 import xyz.kyngs.librepremium.common.event.events.AuthenticPremiumLoginSwitchEvent;
@@ -18,19 +17,22 @@ public class PremiumDisableCommand extends PremiumCommand {
     }
 
     @Default
-    public void onCracked(Audience sender, UUID uuid, User user) {
-        checkAuthorized(user);
-        checkPremium(user);
+    public void onCracked(Audience sender, UUID uuid) {
+        handleAsync(sender, getUser(uuid)
+                .thenCompose(user -> {
+                    checkAuthorized(user);
+                    checkPremium(user);
 
-        sender.sendMessage(getMessage("info-disabling"));
+                    sender.sendMessage(getMessage("info-disabling"));
 
-        user.setPremiumUUID(null);
+                    user.setPremiumUUID(null);
 
-        plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, sender));
+                    plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, sender));
 
-        getDatabaseProvider().saveUser(user);
-
-        plugin.kick(uuid, getMessage("kick-premium-info-disabled"));
+                    return getDatabaseProvider().saveUserAsync(user);
+                })
+                .thenRun(() -> plugin.kick(uuid, getMessage("kick-premium-info-disabled")))
+        );
     }
 
 }
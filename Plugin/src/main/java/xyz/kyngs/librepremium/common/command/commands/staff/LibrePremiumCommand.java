@@ -17,6 +17,7 @@ import javax.annotation.Syntax;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 import static xyz.kyngs.librepremium.common.AuthenticLibrePremium.DATE_TIME_FORMATTER;
 
@@ -71,29 +72,64 @@ public class LibrePremiumCommand extends StaffCommand {
 
     }
 
+    @Subcommand("cache stats")
+    @CommandPermission("librepremium.cache.stats")
+    public void onCacheStats(Audience audience) {
+        audience.sendMessage(getMessage("info-cache-stats"));
+
+        plugin.getCaches().forEach((name, cache) -> {
+            var stats = cache.stats();
+
+            audience.sendMessage(getMessage("info-cache-stats-entry",
+                    "%name%", name,
+                    "%size%", String.valueOf(cache.estimatedSize()),
+                    "%hits%", String.valueOf(stats.hitCount()),
+                    "%misses%", String.valueOf(stats.missCount()),
+                    "%hit_rate%", "%.1f".formatted(stats.hitRate() * 100),
+                    "%evictions%", String.valueOf(stats.evictionCount())
+            ));
+        });
+    }
+
+    @Subcommand("database stats")
+    @CommandPermission("librepremium.database.stats")
+    public void onDatabaseStats(Audience audience) {
+        audience.sendMessage(getMessage("info-database-stats"));
+
+        getDatabaseProvider().getLatencies().forEach((operation, histogram) ->
+                audience.sendMessage(getMessage("info-database-stats-entry",
+                        "%operation%", operation,
+                        "%count%", String.valueOf(histogram.getCount()),
+                        "%p50%", "%.1f".formatted(histogram.getPercentile(0.5) / 1000D),
+                        "%p99%", "%.1f".formatted(histogram.getPercentile(0.99) / 1000D),
+                        "%max%", "%.1f".formatted(histogram.getMax() / 1000D)
+                ))
+        );
+    }
+
     @Subcommand("user info")
     @CommandPermission("librepremium.user.info")
     @Syntax("<name>")
     @CommandCompletion("@players")
     public void onUserInfo(Audience audience, String name) {
-        var user = getUserOtherWiseInform(name);
-
-        audience.sendMessage(getMessage("info-user",
-                "%uuid%", user.getUuid().toString(),
-                "%premium_uuid%", user.getPremiumUUID() == null ? "N/A" : user.getPremiumUUID().toString(),
-                "%last_seen%", DATE_TIME_FORMATTER.format(user.getLastSeen().toLocalDateTime()),
-                "%joined%", DATE_TIME_FORMATTER.format(user.getJoinDate().toLocalDateTime())
-        ));
+        handleAsync(audience, getUserOtherWiseInform(name)
+                .thenAccept(user -> audience.sendMessage(getMessage("info-user",
+                        "%uuid%", user.getUuid().toString(),
+                        "%premium_uuid%", user.getPremiumUUID() == null ? "N/A" : user.getPremiumUUID().toString(),
+                        "%last_seen%", DATE_TIME_FORMATTER.format(user.getLastSeen().toLocalDateTime()),
+                        "%joined%", DATE_TIME_FORMATTER.format(user.getJoinDate().toLocalDateTime())
+                )))
+        );
     }
 
-    public static void enablePremium(Audience audience, User user, AuthenticLibrePremium plugin) {
-        var id = plugin.getUserOrThrowICA(user.getLastNickname());
+    public static CompletableFuture<Void> enablePremium(Audience audience, User user, AuthenticLibrePremium plugin) {
+        return plugin.getUserOrThrowICAAsync(user.getLastNickname()).thenAccept(id -> {
+            if (id == null) throw new InvalidCommandArgument(plugin.getMessages().getMessage("error-not-paid"));
 
-        if (id == null) throw new InvalidCommandArgument(plugin.getMessages().getMessage("error-not-paid"));
+            user.setPremiumUUID(id.uuid());
 
-        user.setPremiumUUID(id.uuid());
-
-        plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, audience));
+            plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, audience));
+        });
     }
 
     @Subcommand("user migrate")
@@ -101,25 +137,28 @@ public class LibrePremiumCommand extends StaffCommand {
     @Syntax("<name> <newName>")
     @CommandCompletion("@players newName")
     public void onUserMigrate(Audience audience, String name, String newName) {
-        var user = getUserOtherWiseInform(name);
-
-        if (getDatabaseProvider().getByName(newName) != null)
-            throw new InvalidCommandArgument(getMessage("error-occupied-user",
-                    "%name%", newName
-            ));
-
-        requireOffline(user);
-
-        audience.sendMessage(getMessage("info-editing"));
-
-        user.setLastNickname(newName);
-        if (user.getPremiumUUID() != null) {
-            user.setPremiumUUID(null);
-            plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, audience));
-        }
-        getDatabaseProvider().saveUser(user);
-
-        audience.sendMessage(getMessage("info-edited"));
+        handleAsync(audience, getUserOtherWiseInform(name)
+                .thenCombine(getDatabaseProvider().getByNameAsync(newName), (user, occupying) -> {
+                    if (occupying != null)
+                        throw new InvalidCommandArgument(getMessage("error-occupied-user",
+                                "%name%", newName
+                        ));
+
+                    requireOffline(user);
+
+                    audience.sendMessage(getMessage("info-editing"));
+
+                    user.setLastNickname(newName);
+                    if (user.getPremiumUUID() != null) {
+                        user.setPremiumUUID(null);
+                        plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, audience));
+                    }
+
+                    return user;
+                })
+                .thenCompose(getDatabaseProvider()::saveUserAsync)
+                .thenRun(() -> audience.sendMessage(getMessage("info-edited")))
+        );
     }
 
     @Subcommand("user unregister")
@@ -127,16 +166,17 @@ public class LibrePremiumCommand extends StaffCommand {
     @Syntax("<name>")
     @CommandCompletion("@players")
     public void onUserUnregister(Audience audience, String name) {
-        var user = getUserOtherWiseInform(name);
+        handleAsync(audience, getUserOtherWiseInform(name)
+                .thenCompose(user -> {
+                    requireOffline(user);
 
-        requireOffline(user);
+                    audience.sendMessage(getMessage("info-editing"));
 
-        audience.sendMessage(getMessage("info-editing"));
-
-        user.setHashedPassword(null);
-        getDatabaseProvider().saveUser(user);
-
-        audience.sendMessage(getMessage("info-edited"));
+                    user.setHashedPassword(null);
+                    return getDatabaseProvider().saveUserAsync(user);
+                })
+                .thenRun(() -> audience.sendMessage(getMessage("info-edited")))
+        );
     }
 
     @Subcommand("user delete")
@@ -144,15 +184,16 @@ public class LibrePremiumCommand extends StaffCommand {
     @Syntax("<name>")
     @CommandCompletion("@players")
     public void onUserDelete(Audience audience, String name) {
-        var user = getUserOtherWiseInform(name);
-
-        requireOffline(user);
-
-        audience.sendMessage(getMessage("info-deleting"));
+        handleAsync(audience, getUserOtherWiseInform(name)
+                .thenCompose(user -> {
+                    requireOffline(user);
 
-        getDatabaseProvider().deleteUser(user);
+                    audience.sendMessage(getMessage("info-deleting"));
 
-        audience.sendMessage(getMessage("info-deleted"));
+                    return getDatabaseProvider().deleteUserAsync(user);
+                })
+                .thenRun(() -> audience.sendMessage(getMessage("info-deleted")))
+        );
     }
 
     @Subcommand("user premium")
@@ -160,17 +201,17 @@ public class LibrePremiumCommand extends StaffCommand {
     @Syntax("<name>")
     @CommandCompletion("@players")
     public void onUserPremium(Audience audience, String name) {
-        var user = getUserOtherWiseInform(name);
-
-        requireOffline(user);
-
-        audience.sendMessage(getMessage("info-editing"));
-
-        enablePremium(audience, user, plugin);
+        handleAsync(audience, getUserOtherWiseInform(name)
+                .thenCompose(user -> {
+                    requireOffline(user);
 
-        getDatabaseProvider().saveUser(user);
+                    audience.sendMessage(getMessage("info-editing"));
 
-        audience.sendMessage(getMessage("info-edited"));
+                    return enablePremium(audience, user, plugin)
+                            .thenCompose(v -> getDatabaseProvider().saveUserAsync(user));
+                })
+                .thenRun(() -> audience.sendMessage(getMessage("info-edited")))
+        );
     }
 
     @Subcommand("user cracked")
@@ -178,16 +219,17 @@ public class LibrePremiumCommand extends StaffCommand {
     @Syntax("<name>")
     @CommandCompletion("@players")
     public void onUserCracked(Audience audience, String name) {
-        var user = getUserOtherWiseInform(name);
-
-        requireOffline(user);
-
-        audience.sendMessage(getMessage("info-editing"));
+        handleAsync(audience, getUserOtherWiseInform(name)
+                .thenCompose(user -> {
+                    requireOffline(user);
 
-        user.setPremiumUUID(null);
-        getDatabaseProvider().saveUser(user);
+                    audience.sendMessage(getMessage("info-editing"));
 
-        audience.sendMessage(getMessage("info-edited"));
+                    user.setPremiumUUID(null);
+                    return getDatabaseProvider().saveUserAsync(user);
+                })
+                .thenRun(() -> audience.sendMessage(getMessage("info-edited")))
+        );
     }
 
     @Subcommand("user register")
@@ -197,24 +239,26 @@ public class LibrePremiumCommand extends StaffCommand {
     public void onUserRegister(Audience audience, String name, String password) {
         audience.sendMessage(getMessage("info-registering"));
 
-        var user = getDatabaseProvider().getByName(name);
-
-        if (user != null) {
-            throw new InvalidCommandArgument(getMessage("error-occupied-user"));
-        }
-
-        user = new User(
-                plugin.generateNewUUID(name, plugin.getUserOrThrowICA(name).uuid()),
-                null,
-                plugin.getDefaultCryptoProvider().createHash(password),
-                name,
-                Timestamp.valueOf(LocalDateTime.now()),
-                Timestamp.valueOf(LocalDateTime.now())
+        handleAsync(audience, getDatabaseProvider().getByNameAsync(name)
+                .thenCompose(existing -> {
+                    if (existing != null) {
+                        throw new InvalidCommandArgument(getMessage("error-occupied-user"));
+                    }
+
+                    return plugin.getUserOrThrowICAAsync(name);
+                })
+                // Hashing is slow on purpose, it must not occupy the database threads
+                .thenApplyAsync(premium -> new User(
+                        plugin.generateNewUUID(name, premium == null ? null : premium.uuid()),
+                        null,
+                        plugin.getDefaultCryptoProvider().createHash(password),
+                        name,
+                        Timestamp.valueOf(LocalDateTime.now()),
+                        Timestamp.valueOf(LocalDateTime.now())
+                ))
+                .thenCompose(getDatabaseProvider()::saveUserAsync)
+                .thenRun(() -> audience.sendMessage(getMessage("info-registered")))
         );
-
-        getDatabaseProvider().saveUser(user);
-
-        audience.sendMessage(getMessage("info-registered"));
     }
 
 }
@@ -6,18 +6,23 @@ import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 import xyz.kyngs.librepremium.common.command.Command;
 import xyz.kyngs.librepremium.common.command.InvalidCommandArgument;
 
+import java.util.concurrent.CompletableFuture;
+
 public class StaffCommand extends Command {
     public StaffCommand(AuthenticLibrePremium plugin) {
         super(plugin);
     }
 
+    /**
+     * @return future completed with the user, never null, or completed exceptionally with {@link InvalidCommandArgument}
+     */
     @NotNull
-    protected User getUserOtherWiseInform(String name) {
-        var user = plugin.getDatabaseProvider().getByName(name);
-
-        if (user == null) throw new InvalidCommandArgument(getMessage("error-unknown-user"));
+    protected CompletableFuture<User> getUserOtherWiseInform(String name) {
+        return plugin.getDatabaseProvider().getByNameAsync(name).thenApply(user -> {
+            if (user == null) throw new InvalidCommandArgument(getMessage("error-unknown-user"));
 
-        return user;
+            return user;
+        });
     }
 
     protected void requireOffline(User user) {
@@ -114,6 +114,162 @@ public class DefaultConfiguration {
             ConfigurateHelper::getString
     );
 
+    public static final ConfigurationKey<Integer> DATABASE_ASYNC_THREADS = new ConfigurationKey<>(
+            "database.async-threads",
+            8,
+            """
+                    The amount of threads used for querying the database off the proxy's event threads.
+                    Should not be higher than the amount of connections your database allows for this proxy.
+                    """,
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Boolean> DATABASE_WRITE_BEHIND_ENABLED = new ConfigurationKey<>(
+            "database.write-behind.enabled",
+            false,
+            """
+                    Whether to queue user updates in memory and write them to the database in batches.
+                    Repeated updates of the same user are merged into a single write. The queue is flushed when the proxy shuts down.
+                    """,
+            ConfigurateHelper::getBoolean
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_WRITE_BEHIND_INTERVAL = new ConfigurationKey<>(
+            "database.write-behind.interval",
+            500,
+            "How often, in milliseconds, the write-behind queue is flushed.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_WRITE_BEHIND_BATCH_SIZE = new ConfigurationKey<>(
+            "database.write-behind.batch-size",
+            250,
+            "The amount of queued users, that triggers a flush before the interval elapses.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_BULK_CHUNK_SIZE = new ConfigurationKey<>(
+            "database.bulk-chunk-size",
+            1000,
+            "The amount of users written in a single transaction when many users are saved at once, for example during a migration.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_ARCHIVE_AFTER = new ConfigurationKey<>(
+            "database.archive.after",
+            0,
+            """
+                    Users not seen for this many days are moved to a separate archive table, which keeps the main table and its indexes small.
+                    Archived users are moved back as soon as they are looked up again, for example when they join. 0 disables the archiving.
+                    When several proxies share the database, enable this on all of them, the proxies without it do not look into the archive.
+                    """,
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_ARCHIVE_INTERVAL = new ConfigurationKey<>(
+            "database.archive.interval",
+            60,
+            "How often, in minutes, inactive users are moved to the archive.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_SLOW_QUERY_THRESHOLD = new ConfigurationKey<>(
+            "database.slow-query-threshold",
+            1000,
+            "Database queries taking longer than this many milliseconds are logged, without their parameters. 0 disables the logging.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<String> DATABASE_TYPE = new ConfigurationKey<>(
+            "database.type",
+            "mysql",
+            """
+                    The database backend, either mysql, postgresql or sqlite.
+                    SQLite keeps everything in a local file and needs no database server, but it can only be used by a single proxy.
+                    The connection settings below only apply to MySQL and PostgreSQL, do not forget to change the port to 5432 for PostgreSQL.
+                    """,
+            ConfigurateHelper::getString
+    );
+
+    public static final ConfigurationKey<String> DATABASE_SQLITE_FILE = new ConfigurationKey<>(
+            "database.sqlite-file",
+            "user-data.db",
+            "The file the SQLite database is stored in, relative to the plugin folder.",
+            ConfigurateHelper::getString
+    );
+
+    public static final ConfigurationKey<List<String>> DATABASE_REPLICAS = new ConfigurationKey<>(
+            "database.replicas",
+            List.of(),
+            """
+                    Read replicas of the MySQL database, as host:port. They must accept the same user, password and database name as the primary.
+                    Lookups are spread over the replicas, writes always go to the primary.
+                    """,
+            ConfigurateHelper::getStringList
+    );
+
+    public static final ConfigurationKey<String> DATABASE_REPLICA_ROUTING = new ConfigurationKey<>(
+            "database.replica-routing",
+            "round-robin",
+            "How lookups are spread over the replicas, either round-robin or least-latency.",
+            ConfigurateHelper::getString
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_REPLICA_PIN_TIME = new ConfigurationKey<>(
+            "database.replica-pin-time",
+            5000,
+            """
+                    For how long, in milliseconds, lookups of a user are sent to the primary after the user has been saved.
+                    Should be longer than the replication lag, otherwise a lookup might not see the latest changes.
+                    """,
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_WARM_UP_COUNT = new ConfigurationKey<>(
+            "database.warm-up.count",
+            0,
+            """
+                    How many of the most recently seen users are loaded into the cache in the background right after startup, 0 disables the warm-up.
+                    This makes the reconnect flood after a restart hit the cache instead of the database.
+                    """,
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_WARM_UP_MAX_AGE = new ConfigurationKey<>(
+            "database.warm-up.max-age",
+            7,
+            "Only users seen within this many days are warmed up, 0 means no limit.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_CACHE_MAXIMUM_SIZE = new ConfigurationKey<>(
+            "database.cache.maximum-size",
+            50000,
+            "The maximum amount of users kept in memory, 0 means unlimited. Ignored if maximum-weight is set.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_CACHE_MAXIMUM_WEIGHT = new ConfigurationKey<>(
+            "database.cache.maximum-weight",
+            0,
+            "The maximum estimated memory, in kilobytes, the users kept in memory may take, 0 disables this limit.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<Integer> DATABASE_CACHE_EXPIRY = new ConfigurationKey<>(
+            "database.cache.expiry",
+            10,
+            "After how many minutes a user is removed from memory.",
+            ConfigurateHelper::getInt
+    );
+
+    public static final ConfigurationKey<String> DATABASE_CACHE_EXPIRY_POLICY = new ConfigurationKey<>(
+            "database.cache.expiry-policy",
+            "access",
+            "Whether the expiry counts from the last access of the user, access, or from when the user was loaded, write.",
+            ConfigurateHelper::getString
+    );
+
     public static final ConfigurationKey<Boolean> MIGRATION_ON_NEXT_STARTUP = new ConfigurationKey<>(
             "migration.on-next-startup",
             false,
@@ -199,11 +355,30 @@ public class DefaultConfiguration {
         helper.setDefault(USE_TITLES);
         helper.setDefault(NEW_UUID_CREATOR);
 
+        helper.setDefault(DATABASE_TYPE);
+        helper.setDefault(DATABASE_SQLITE_FILE);
         helper.setDefault(DATABASE_HOST);
         helper.setDefault(DATABASE_PORT);
         helper.setDefault(DATABASE_USER);
         helper.setDefault(DATABASE_PASSWORD);
         helper.setDefault(DATABASE_NAME);
+        helper.setDefault(DATABASE_REPLICAS);
+        helper.setDefault(DATABASE_REPLICA_ROUTING);
+        helper.setDefault(DATABASE_REPLICA_PIN_TIME);
+        helper.setDefault(DATABASE_ASYNC_THREADS);
+        helper.setDefault(DATABASE_WRITE_BEHIND_ENABLED);
+        helper.setDefault(DATABASE_WRITE_BEHIND_INTERVAL);
+        helper.setDefault(DATABASE_WRITE_BEHIND_BATCH_SIZE);
+        helper.setDefault(DATABASE_BULK_CHUNK_SIZE);
+        helper.setDefault(DATABASE_ARCHIVE_AFTER);
+        helper.setDefault(DATABASE_ARCHIVE_INTERVAL);
+        helper.setDefault(DATABASE_SLOW_QUERY_THRESHOLD);
+        helper.setDefault(DATABASE_WARM_UP_COUNT);
+        helper.setDefault(DATABASE_WARM_UP_MAX_AGE);
+        helper.setDefault(DATABASE_CACHE_MAXIMUM_SIZE);
+        helper.setDefault(DATABASE_CACHE_MAXIMUM_WEIGHT);
+        helper.setDefault(DATABASE_CACHE_EXPIRY);
+        helper.setDefault(DATABASE_CACHE_EXPIRY_POLICY);
 
         helper.setDefault(MIGRATION_ON_NEXT_STARTUP);
         helper.setDefault(MIGRATION_TYPE);
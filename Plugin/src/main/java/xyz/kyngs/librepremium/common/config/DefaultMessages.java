@@ -153,6 +153,13 @@ public class DefaultMessages {
             ConfigurateHelper::getString
     );
 
+    public static final ConfigurationKey<String> ERROR_DATABASE_UNAVAILABLE = new ConfigurationKey<>(
+            "error-database-unavailable",
+            "We are having trouble reaching our database, please try again in a while!",
+            "This message is displayed when the connection to the database has been lost and the player is not cached. It is also used to kick joining players in that case.",
+            ConfigurateHelper::getString
+    );
+
     public static final ConfigurationKey<String> ERROR_PASSWORD_WRONG = new ConfigurationKey<>(
             "error-password-wrong",
             "Wrong password!",
@@ -360,6 +367,34 @@ public class DefaultMessages {
             ConfigurateHelper::getString
     );
 
+    public static final ConfigurationKey<String> INFO_CACHE_STATS = new ConfigurationKey<>(
+            "info-cache-stats",
+            "Cache statistics:",
+            "This message is displayed before the statistics of the caches.",
+            ConfigurateHelper::getString
+    );
+
+    public static final ConfigurationKey<String> INFO_CACHE_STATS_ENTRY = new ConfigurationKey<>(
+            "info-cache-stats-entry",
+            "  %name%: %size% entries, %hits% hits, %misses% misses (%hit_rate%% hit rate), %evictions% evictions",
+            "This message is displayed for every cache when the cache statistics are requested.",
+            ConfigurateHelper::getString
+    );
+
+    public static final ConfigurationKey<String> INFO_DATABASE_STATS = new ConfigurationKey<>(
+            "info-database-stats",
+            "Database query latencies:",
+            "This message is displayed before the latencies of the database queries.",
+            ConfigurateHelper::getString
+    );
+
+    public static final ConfigurationKey<String> INFO_DATABASE_STATS_ENTRY = new ConfigurationKey<>(
+            "info-database-stats-entry",
+            "  %operation%: %count% queries, p50 %p50% ms, p99 %p99% ms, max %max% ms",
+            "This message is displayed for every kind of database query when the database statistics are requested.",
+            ConfigurateHelper::getString
+    );
+
     public static final ConfigurationKey<String> INFO_USER = new ConfigurationKey<>(
             "info-user",
             """
@@ -451,6 +486,7 @@ public class DefaultMessages {
         helper.setDefault(ERROR_NOT_PAID);
         helper.setDefault(ERROR_NOT_PREMIUM);
         helper.setDefault(ERROR_NOT_CRACKED);
+        helper.setDefault(ERROR_DATABASE_UNAVAILABLE);
         helper.setDefault(ERROR_PASSWORD_WRONG);
         helper.setDefault(ERROR_PASSWORD_NOT_MATCH);
         helper.setDefault(ERROR_PASSWORD_CORRUPTED);
@@ -482,6 +518,10 @@ public class DefaultMessages {
         helper.setDefault(INFO_RELOADING);
         helper.setDefault(INFO_RELOADED);
         helper.setDefault(INFO_USER);
+        helper.setDefault(INFO_CACHE_STATS);
+        helper.setDefault(INFO_CACHE_STATS_ENTRY);
+        helper.setDefault(INFO_DATABASE_STATS);
+        helper.setDefault(INFO_DATABASE_STATS_ENTRY);
 
         helper.setDefault(PROMPT_REGISTER);
         helper.setDefault(PROMPT_LOGIN);
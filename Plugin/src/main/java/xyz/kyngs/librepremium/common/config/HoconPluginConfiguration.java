@@ -75,6 +75,11 @@ public class HoconPluginConfiguration implements PluginConfiguration {
         return get(DATABASE_PORT);
     }
 
+    @Override
+    public int getDatabaseAsyncThreads() {
+        return get(DATABASE_ASYNC_THREADS);
+    }
+
     @Override
     public String getDefaultCryptoProvider() {
         return get(DEFAULT_CRYPTO_PROVIDER);
@@ -141,6 +146,96 @@ public class HoconPluginConfiguration implements PluginConfiguration {
         return get(USE_TITLES);
     }
 
+    @Override
+    public boolean useWriteBehind() {
+        return get(DATABASE_WRITE_BEHIND_ENABLED);
+    }
+
+    @Override
+    public int getWriteBehindInterval() {
+        return get(DATABASE_WRITE_BEHIND_INTERVAL);
+    }
+
+    @Override
+    public int getWriteBehindBatchSize() {
+        return get(DATABASE_WRITE_BEHIND_BATCH_SIZE);
+    }
+
+    @Override
+    public String getDatabaseType() {
+        return get(DATABASE_TYPE);
+    }
+
+    @Override
+    public String getDatabaseSQLiteFile() {
+        return get(DATABASE_SQLITE_FILE);
+    }
+
+    @Override
+    public Collection<String> getDatabaseReplicas() {
+        return get(DATABASE_REPLICAS);
+    }
+
+    @Override
+    public String getDatabaseReplicaRouting() {
+        return get(DATABASE_REPLICA_ROUTING);
+    }
+
+    @Override
+    public int getDatabaseReplicaPinTime() {
+        return get(DATABASE_REPLICA_PIN_TIME);
+    }
+
+    @Override
+    public int getWarmUpCount() {
+        return get(DATABASE_WARM_UP_COUNT);
+    }
+
+    @Override
+    public int getWarmUpMaxAge() {
+        return get(DATABASE_WARM_UP_MAX_AGE);
+    }
+
+    @Override
+    public int getUserCacheMaximumSize() {
+        return get(DATABASE_CACHE_MAXIMUM_SIZE);
+    }
+
+    @Override
+    public int getUserCacheMaximumWeight() {
+        return get(DATABASE_CACHE_MAXIMUM_WEIGHT);
+    }
+
+    @Override
+    public int getUserCacheExpiry() {
+        return get(DATABASE_CACHE_EXPIRY);
+    }
+
+    @Override
+    public String getUserCacheExpiryPolicy() {
+        return get(DATABASE_CACHE_EXPIRY_POLICY);
+    }
+
+    @Override
+    public int getBulkChunkSize() {
+        return get(DATABASE_BULK_CHUNK_SIZE);
+    }
+
+    @Override
+    public int getArchiveAfter() {
+        return get(DATABASE_ARCHIVE_AFTER);
+    }
+
+    @Override
+    public int getArchiveInterval() {
+        return get(DATABASE_ARCHIVE_INTERVAL);
+    }
+
+    @Override
+    public int getSlowQueryThreshold() {
+        return get(DATABASE_SLOW_QUERY_THRESHOLD);
+    }
+
     public <T> T get(ConfigurationKey<T> key) {
         return helper.get(key);
     }
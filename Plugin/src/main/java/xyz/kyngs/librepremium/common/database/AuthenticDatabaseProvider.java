@@ -0,0 +1,1669 @@
+package xyz.kyngs.librepremium.common.database;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.jetbrains.annotations.Nullable;
+import xyz.kyngs.librepremium.api.Logger;
+import xyz.kyngs.librepremium.api.configuration.PluginConfiguration;
+import xyz.kyngs.librepremium.api.crypto.HashedPassword;
+import xyz.kyngs.librepremium.api.database.ReadWriteDatabaseProvider;
+import xyz.kyngs.librepremium.api.database.User;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigrationException;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigrator;
+import xyz.kyngs.librepremium.common.util.GeneralUtil;
+import xyz.kyngs.librepremium.common.util.LatencyHistogram;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The backend independent part of the database providers. Takes care of caching, the async executor and write-behind,
+ * the backends only provide connections and the few statements which differ between SQL dialects.
+ *
+ * @author kyngs
+ */
+public abstract class AuthenticDatabaseProvider implements ReadWriteDatabaseProvider {
+
+    // Keeps the IN lists well below the parameter limits of every backend
+    private static final int BULK_LOOKUP_SIZE = 500;
+    // Keeps the multi-row inserts below the 999 parameter limit of older SQLite versions
+    private static final int INSERT_ROWS = 100;
+    private static final int MAXIMUM_CONFLICT_RETRIES = 3;
+    private static final int ARCHIVE_BATCH_SIZE = 500;
+    private static final int NORMALIZE_BATCH_SIZE = 1000;
+    // Once reached, saves are written synchronously, or fail while the database is unavailable
+    private static final int MAXIMUM_PENDING_WRITES = 10000;
+    // A user failing this many flushes in a row can't be written, such as due to a constraint, and is dropped
+    private static final int MAXIMUM_FLUSH_ATTEMPTS = 5;
+    // The data and the archive table share these columns
+    protected static final String COLUMNS = "uuid, premium_uuid, hashed_password, salt, algo, last_nickname, last_nickname_lower, joined, last_seen, version";
+
+    private final Cache<UUID, User> userCache;
+    private final Cache<String, UUID> nameIndex;
+    private final Cache<UUID, UUID> premiumIndex;
+    private final Cache<String, Boolean> missingNames;
+    private final Cache<UUID, Boolean> missingUUIDs;
+    private final Cache<UUID, Boolean> missingPremiumUUIDs;
+    private final Cache<UUID, Boolean> unrestorable;
+    private final AtomicLong saveCounter;
+    protected final Logger logger;
+    private final ExecutorService executor;
+    private final Map<UUID, User> pendingWrites;
+    // Index the queued users by their lowercase nickname and premium UUID, verified against the queued user on every hit
+    private final Map<String, UUID> pendingNames;
+    private final Map<UUID, UUID> pendingPremiumUUIDs;
+    // Only touched while holding the flushLock
+    private final Map<UUID, Integer> flushFailures;
+    private final Object flushLock;
+    private final int writeBehindBatchSize;
+    private final int bulkChunkSize;
+    private final ScheduledExecutorService scheduler;
+    private final CircuitBreaker breaker;
+    private volatile boolean writeBehind;
+    private final int archiveAfter;
+    private final AtomicBoolean archiving;
+    private final Map<String, LatencyHistogram> latencies;
+    private final long slowQueryThreshold;
+
+    protected AuthenticDatabaseProvider(PluginConfiguration configuration, Logger logger) {
+        this.logger = logger;
+
+        var threads = Math.max(1, configuration.getDatabaseAsyncThreads());
+        var counter = new AtomicInteger();
+
+        // Bounded on both threads and queue, if the database can't keep up, the callers slow down instead of piling up tasks
+        executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024),
+                runnable -> {
+                    var thread = new Thread(runnable, "LibrePremium-Database-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    // CallerRunsPolicy would silently drop the task once shut down, the async variants fail their futures instead
+                    if (pool.isShutdown()) throw new RejectedExecutionException("The database provider has been disabled");
+
+                    runnable.run();
+                }
+        );
+
+        var expiry = Math.max(1, configuration.getUserCacheExpiry());
+        var expireAfterWrite = configuration.getUserCacheExpiryPolicy().equalsIgnoreCase("write");
+        var maximumSize = configuration.getUserCacheMaximumSize();
+        var maximumWeight = configuration.getUserCacheMaximumWeight();
+
+        var userCacheBuilder = Caffeine.newBuilder().recordStats();
+
+        if (expireAfterWrite) {
+            userCacheBuilder.expireAfterWrite(expiry, TimeUnit.MINUTES);
+        } else {
+            userCacheBuilder.expireAfterAccess(expiry, TimeUnit.MINUTES);
+        }
+
+        if (maximumWeight > 0) {
+            userCache = userCacheBuilder
+                    .maximumWeight(maximumWeight * 1024L)
+                    .<UUID, User>weigher((uuid, user) -> estimateSize(user))
+                    .build();
+        } else {
+            if (maximumSize > 0) userCacheBuilder.maximumSize(maximumSize);
+
+            userCache = userCacheBuilder.build();
+        }
+
+        // Only point to the UUID, the user itself always comes from the userCache, so there's a single instance per user
+        nameIndex = indexCache(expiry, maximumSize);
+        premiumIndex = indexCache(expiry, maximumSize);
+
+        // Remembers lookups that found nothing, so bot floods with random names don't reach the database every time
+        missingNames = negativeCache();
+        missingUUIDs = negativeCache();
+        missingPremiumUUIDs = negativeCache();
+        // Archived users whose nickname has been taken, so that every lookup does not retry and warn again
+        unrestorable = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .build();
+        saveCounter = new AtomicLong();
+
+        pendingWrites = new ConcurrentHashMap<>();
+        pendingNames = new ConcurrentHashMap<>();
+        pendingPremiumUUIDs = new ConcurrentHashMap<>();
+        flushFailures = new HashMap<>();
+        flushLock = new Object();
+        writeBehind = configuration.useWriteBehind();
+        writeBehindBatchSize = Math.max(1, configuration.getWriteBehindBatchSize());
+        bulkChunkSize = Math.max(1, configuration.getBulkChunkSize());
+
+        breaker = new CircuitBreaker();
+
+        // Flushes the write-behind queue and probes the connection while it is lost
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "LibrePremium-Database-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (writeBehind) {
+            var interval = Math.max(50, configuration.getWriteBehindInterval());
+
+            scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        latencies = new ConcurrentHashMap<>();
+        slowQueryThreshold = TimeUnit.MILLISECONDS.toNanos(configuration.getSlowQueryThreshold());
+
+        archiveAfter = configuration.getArchiveAfter();
+        archiving = new AtomicBoolean();
+
+        if (archiveAfter > 0) {
+            var interval = Math.max(1, configuration.getArchiveInterval());
+
+            // Runs on the executor, so that a long run does not hold up the write-behind flushes
+            scheduler.scheduleWithFixedDelay(() -> executor.execute(this::archiveInactive), interval, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return Whether the database is currently reachable
+     */
+    public boolean isAvailable() {
+        return breaker.isClosed();
+    }
+
+    protected static boolean isConnectionError(Exception e) {
+        if (e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException) return true;
+
+        return e instanceof SQLException sqlException && sqlException.getSQLState() != null && sqlException.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Must be called by the backends whenever they lose the connection to the database.
+     * Instead of shutting down, the provider keeps serving cached users and queues writes until a probe reconnects.
+     */
+    protected void connectionLost(Exception e) {
+        var delay = breaker.trip();
+
+        // Already open, a probe is already scheduled
+        if (delay == -1) return;
+
+        logger.error("!! LOST CONNECTION TO THE DATABASE, ONLY CACHED USERS ARE AVAILABLE AND SAVES ARE QUEUED. RECONNECTING IN %d MS !!".formatted(delay));
+        if (e != null) e.printStackTrace();
+
+        try {
+            scheduler.schedule(this::probe, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down
+        }
+    }
+
+    private void probe() {
+        try {
+            query("probe", connection -> connection.prepareStatement("SELECT 1").executeQuery());
+        } catch (DatabaseUnavailableException ignored) {
+            // The next probe has been scheduled when the breaker opened again
+        }
+    }
+
+    /**
+     * @return The latencies of the database round trips, by the operation they have been made for
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+
+    private void recordLatency(String operation, long nanos) {
+        latencies.computeIfAbsent(operation, x -> new LatencyHistogram()).record(nanos);
+
+        if (slowQueryThreshold > 0 && nanos >= slowQueryThreshold) {
+            // The parameters are user data, such as nicknames, so they are deliberately left out
+            logger.warn("Slow database query: %s took %d ms".formatted(operation, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+    }
+
+    /**
+     * Runs the function through the circuit breaker and records its latency. The backends swallow exceptions, so the function marks whether it completed.
+     *
+     * @param operation The name the latency is recorded under
+     * @param required  Whether a failed call has to throw instead of returning null, so that the caller can tell the failure from an empty result
+     * @throws DatabaseUnavailableException If the connection is lost, either before or during the call, or a required call fails
+     */
+    private <T> T guard(String operation, boolean required, ConnectionFunction<T> function, Function<ConnectionFunction<T>, T> runner) {
+        if (!breaker.allowRequest()) throw new DatabaseUnavailableException();
+
+        var succeeded = new AtomicBoolean();
+        var start = System.nanoTime();
+
+        T result = runner.apply(connection -> {
+            var value = function.apply(connection);
+            succeeded.set(true);
+            return value;
+        });
+
+        recordLatency(operation, System.nanoTime() - start);
+
+        if (succeeded.get()) {
+            if (breaker.recordSuccess()) {
+                logger.info("Reconnected to the database, writing %d queued users".formatted(pendingWrites.size()));
+                scheduler.execute(this::flush);
+            }
+
+            return result;
+        }
+
+        // A failed probe keeps the breaker open, even if the backend did not recognize the failure as a lost connection
+        if (breaker.isHalfOpen()) connectionLost(null);
+
+        if (!breaker.isClosed()) throw new DatabaseUnavailableException();
+
+        if (required) throw new DatabaseUnavailableException("The database query %s failed".formatted(operation));
+
+        return result;
+    }
+
+    private <T> T query(String operation, ConnectionFunction<T> function) {
+        return guard(operation, false, function, this::runFunction);
+    }
+
+    /**
+     * Lookups throw on failure, a failed lookup must never be mistaken for a missing user.
+     */
+    private <T> T lookup(String operation, Collection<?> keys, ConnectionFunction<T> function) {
+        return guard(operation, true, function, guarded -> runLookup(keys, guarded));
+    }
+
+    private void update(String operation, ConnectionTask task) {
+        guard(operation, false, connection -> {
+            task.run(connection);
+            return null;
+        }, this::runFunction);
+    }
+
+    /**
+     * Runs the task on a connection, exceptions are handled by the backend.
+     */
+    protected abstract void runTask(ConnectionTask task);
+
+    /**
+     * Runs the function on a connection, exceptions are handled by the backend, which then returns null.
+     */
+    protected abstract <T> T runFunction(ConnectionFunction<T> function);
+
+    /**
+     * Runs a lookup of users, backends with read replicas may route it away from the primary.
+     *
+     * @param keys The lowercase nicknames, UUIDs or premium UUIDs the users are looked up by
+     */
+    protected <T> T runLookup(Collection<?> keys, ConnectionFunction<T> function) {
+        return runFunction(function);
+    }
+
+    /**
+     * Called whenever a user is saved or deleted, before the change reaches the database.
+     */
+    protected void userWritten(User user) {
+    }
+
+    /**
+     * @return An insert of the rows returned by the select into all {@link #COLUMNS} of the table, which skips the rows conflicting with existing ones
+     */
+    protected abstract String insertIgnoringConflicts(String table, String select);
+
+    /**
+     * A plain insert, a row conflicting with any existing one fails the statement.
+     */
+    private static String insertStatement(int rows) {
+        var values = String.join(", ", Collections.nCopies(rows, "(?, ?, ?, ?, ?, ?, ?, ?, ?)"));
+
+        return "INSERT INTO librepremium_data(uuid, premium_uuid, hashed_password, salt, algo, last_nickname, last_nickname_lower, joined, last_seen) VALUES %s".formatted(values);
+    }
+
+    protected abstract void closeDatabase();
+
+    /**
+     * Backends which can reuse statements on their connections should override this.
+     */
+    protected PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Prepares a statement whose results are read exactly once from start to end, backends should make the driver stream the rows.
+     */
+    protected PreparedStatement prepareStreaming(Connection connection, String sql) throws SQLException {
+        return prepare(connection, sql);
+    }
+
+    /**
+     * Converts the UUID to the value its column stores, by default BINARY(16).
+     */
+    protected Object toDatabase(@Nullable UUID uuid) {
+        return uuid == null ? null : GeneralUtil.toBytes(uuid);
+    }
+
+    protected UUID readUUID(ResultSet rs, String column) throws SQLException {
+        var bytes = rs.getBytes(column);
+
+        return bytes == null ? null : GeneralUtil.fromBytes(bytes);
+    }
+
+    /**
+     * Brings the schema up to date, the backends call this from their constructor.
+     *
+     * @throws SchemaMigrationException If the migration fails, the backend only logs the exception and carries on otherwise
+     */
+    protected void migrate(SchemaMigrator migrator) {
+        var failure = new AtomicReference<SQLException>();
+
+        Boolean migrated = runFunction(connection -> {
+            try {
+                migrator.migrate(connection);
+                return true;
+            } catch (SQLException e) {
+                failure.set(e);
+                return false;
+            }
+        });
+
+        // Null if not even a connection could be obtained, the backend has already reported that
+        if (!Boolean.TRUE.equals(migrated)) throw new SchemaMigrationException("Failed to migrate the database schema", failure.get());
+    }
+
+    /**
+     * Fills the lowercase nickname column of existing rows in batches. Nicknames which only differ in case would break its unique index,
+     * so only the most recently seen of such users keeps the nickname, the others can no longer be looked up by it.
+     *
+     * @throws SQLException If duplicates remain afterwards, so that the migration fails with them listed instead of on the unique index
+     */
+    protected void normalizeNicknames(Connection connection) throws SQLException {
+        var select = connection.prepareStatement("SELECT uuid FROM librepremium_data WHERE last_nickname_lower IS NULL LIMIT %d".formatted(NORMALIZE_BATCH_SIZE));
+        var filled = 0L;
+
+        while (true) {
+            var rs = select.executeQuery();
+            var uuids = new ArrayList<Object>(NORMALIZE_BATCH_SIZE);
+
+            while (rs.next()) {
+                uuids.add(toDatabase(readUUID(rs, "uuid")));
+            }
+
+            if (uuids.isEmpty()) break;
+
+            var fill = connection.prepareStatement("UPDATE librepremium_data SET last_nickname_lower=LOWER(last_nickname) WHERE uuid IN (%s)".formatted(placeholders(uuids.size())));
+
+            for (int i = 0; i < uuids.size(); i++) {
+                fill.setObject(i + 1, uuids.get(i));
+            }
+
+            var updated = fill.executeUpdate();
+
+            filled += updated;
+            logger.info("Filled %d lowercase nicknames so far".formatted(filled));
+
+            // Stops even if a batch changed nothing, instead of selecting the same rows forever
+            if (updated == 0 || uuids.size() < NORMALIZE_BATCH_SIZE) break;
+        }
+
+        var duplicates = findDuplicateNicknames(connection);
+
+        if (duplicates.isEmpty()) return;
+
+        logger.warn("Found %d nicknames shared by users whose nicknames only differ in case".formatted(duplicates.size()));
+
+        var users = connection.prepareStatement("SELECT uuid FROM librepremium_data WHERE last_nickname_lower=? ORDER BY last_seen DESC");
+        var clear = connection.prepareStatement("UPDATE librepremium_data SET last_nickname_lower=NULL WHERE uuid=?");
+
+        for (String nickname : duplicates) {
+            users.setString(1, nickname);
+
+            var rs = users.executeQuery();
+
+            // The most recently seen user keeps the nickname
+            rs.next();
+
+            while (rs.next()) {
+                var uuid = readUUID(rs, "uuid");
+
+                logger.warn("User %s shares the nickname %s with another user, it can no longer be looked up by it".formatted(uuid, nickname));
+
+                clear.setObject(1, toDatabase(uuid));
+                clear.addBatch();
+            }
+        }
+
+        clear.executeBatch();
+
+        var remaining = findDuplicateNicknames(connection);
+
+        if (!remaining.isEmpty()) {
+            throw new SQLException("Could not make the lowercase nicknames unique, these are still shared by several users: " + String.join(", ", remaining));
+        }
+    }
+
+    private static List<String> findDuplicateNicknames(Connection connection) throws SQLException {
+        var duplicates = new ArrayList<String>();
+        var rs = connection.prepareStatement("SELECT last_nickname_lower FROM librepremium_data WHERE last_nickname_lower IS NOT NULL GROUP BY last_nickname_lower HAVING COUNT(*)>1").executeQuery();
+
+        while (rs.next()) {
+            duplicates.add(rs.getString(1));
+        }
+
+        return duplicates;
+    }
+
+    private User getUserFromResult(ResultSet rs) throws SQLException {
+        var id = readUUID(rs, "uuid");
+        var premiumUUID = readUUID(rs, "premium_uuid");
+        var hashedPassword = rs.getString("hashed_password");
+        var salt = rs.getString("salt");
+        var algo = rs.getString("algo");
+        var lastNickname = rs.getString("last_nickname");
+        var joinDate = rs.getTimestamp("joined");
+        var lastSeen = rs.getTimestamp("last_seen");
+
+        var user = new User(
+                id,
+                premiumUUID,
+                hashedPassword == null ? null : new HashedPassword(
+                        hashedPassword,
+                        salt,
+                        algo
+                ),
+                lastNickname,
+                joinDate,
+                lastSeen
+        );
+
+        user.markPersisted();
+        user.setVersion(rs.getLong("version"));
+
+        return user;
+    }
+
+    /**
+     * Users waiting in the write-behind queue might not be in the database yet, so they have to be looked up here first.
+     * The indexes are only cleaned up by the flushes, so every hit is verified against the queued user.
+     */
+    private User findPending(@Nullable UUID uuid, Predicate<User> predicate) {
+        if (uuid == null) return null;
+
+        var user = pendingWrites.get(uuid);
+
+        return user != null && predicate.test(user) ? user : null;
+    }
+
+    private static <K> Cache<K, UUID> indexCache(int expiry, int maximumSize) {
+        var builder = Caffeine.newBuilder()
+                .recordStats()
+                .expireAfterAccess(expiry, TimeUnit.MINUTES);
+
+        if (maximumSize > 0) builder.maximumSize(maximumSize);
+
+        return builder.build();
+    }
+
+    private static <K> Cache<K, Boolean> negativeCache() {
+        return Caffeine.newBuilder()
+                .recordStats()
+                .maximumSize(10000)
+                .expireAfterWrite(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * A rough estimate of the memory a cached user takes, in bytes. Only used to weigh the users against each other.
+     */
+    private static int estimateSize(User user) {
+        var size = 160 + user.getLastNickname().length() * 2;
+        var password = user.getHashedPassword();
+
+        if (password != null) {
+            size += 64 + password.hash().length() * 2 + password.algo().length() * 2;
+            if (password.salt() != null) size += password.salt().length() * 2;
+        }
+
+        return size;
+    }
+
+    /**
+     * @return The caches of this provider, by a human-readable name
+     */
+    public Map<String, Cache<?, ?>> getCaches() {
+        var caches = new LinkedHashMap<String, Cache<?, ?>>();
+
+        caches.put("users", userCache);
+        caches.put("nicknames", nameIndex);
+        caches.put("premium-uuids", premiumIndex);
+        caches.put("unknown-nicknames", missingNames);
+        caches.put("unknown-uuids", missingUUIDs);
+        caches.put("unknown-premium-uuids", missingPremiumUUIDs);
+        caches.put("unrestorable-users", unrestorable);
+
+        return caches;
+    }
+
+    /**
+     * Only records the miss if no user has been saved since the lookup started, otherwise the miss might already be outdated.
+     */
+    private <K> void rememberMissing(Cache<K, Boolean> cache, K key, long saves) {
+        if (saveCounter.get() == saves) cache.put(key, Boolean.TRUE);
+    }
+
+    private User cacheUser(User user) {
+        var cached = userCache.get(user.getUuid(), x -> user);
+
+        indexUser(cached);
+
+        return cached;
+    }
+
+    private void indexUser(User user) {
+        nameIndex.put(user.getLastNickname().toLowerCase(Locale.ROOT), user.getUuid());
+
+        if (user.getPremiumUUID() != null) premiumIndex.put(user.getPremiumUUID(), user.getUuid());
+    }
+
+    /**
+     * The indexes are not updated when a user changes in memory, so every hit is verified against the cached user.
+     * A stale entry is dropped and the lookup falls back to the database.
+     */
+    private User getCachedByName(String name) {
+        var key = name.toLowerCase(Locale.ROOT);
+        var pending = findPending(pendingNames.get(key), user -> user.getLastNickname().equalsIgnoreCase(name));
+
+        if (pending != null) return pending;
+        var uuid = nameIndex.getIfPresent(key);
+
+        if (uuid == null) return null;
+
+        var user = userCache.getIfPresent(uuid);
+
+        if (user != null && user.getLastNickname().equalsIgnoreCase(name)) return user;
+
+        nameIndex.invalidate(key);
+        return null;
+    }
+
+    private User getCachedByPremiumUUID(UUID premiumUUID) {
+        var pending = findPending(pendingPremiumUUIDs.get(premiumUUID), user -> premiumUUID.equals(user.getPremiumUUID()));
+
+        if (pending != null) return pending;
+
+        var uuid = premiumIndex.getIfPresent(premiumUUID);
+
+        if (uuid == null) return null;
+
+        var user = userCache.getIfPresent(uuid);
+
+        if (user != null && premiumUUID.equals(user.getPremiumUUID())) return user;
+
+        premiumIndex.invalidate(premiumUUID);
+        return null;
+    }
+
+    @Override
+    public User getByName(String name) {
+        var cached = getCachedByName(name);
+
+        if (cached != null) return cached;
+
+        var key = name.toLowerCase(Locale.ROOT);
+
+        if (missingNames.getIfPresent(key) != null) return null;
+
+        var saves = saveCounter.get();
+
+        var user = lookup("getByName", List.of(key), connection -> {
+            var ps = prepare(connection, "SELECT * FROM librepremium_data WHERE last_nickname_lower=?");
+
+            ps.setString(1, key);
+
+            var rs = ps.executeQuery();
+
+            return rs.next() ? getUserFromResult(rs) : null;
+        });
+
+        if (user == null && archiveAfter > 0) user = restore("last_nickname_lower", key);
+
+        if (user == null) {
+            rememberMissing(missingNames, key, saves);
+            return null;
+        }
+
+        return cacheUser(user);
+    }
+
+    @Override
+    public User getByUUID(UUID uuid) {
+        var pending = pendingWrites.get(uuid);
+
+        if (pending != null) return pending;
+
+        if (missingUUIDs.getIfPresent(uuid) != null) return null;
+
+        var saves = saveCounter.get();
+
+        return userCache.get(uuid, x -> {
+            var user = lookup("getByUUID", List.of(uuid), connection -> {
+                var ps = prepare(connection, "SELECT * FROM librepremium_data WHERE uuid=?");
+
+                ps.setObject(1, toDatabase(uuid));
+
+                var rs = ps.executeQuery();
+
+                return rs.next() ? getUserFromResult(rs) : null;
+            });
+
+            if (user == null && archiveAfter > 0) user = restore("uuid", toDatabase(uuid));
+
+            if (user == null) {
+                rememberMissing(missingUUIDs, uuid, saves);
+                return null;
+            }
+
+            indexUser(user);
+
+            return user;
+        });
+    }
+
+    @Override
+    public User getByPremiumUUID(UUID uuid) {
+        var cached = getCachedByPremiumUUID(uuid);
+
+        if (cached != null) return cached;
+
+        if (missingPremiumUUIDs.getIfPresent(uuid) != null) return null;
+
+        var saves = saveCounter.get();
+
+        var user = lookup("getByPremiumUUID", List.of(uuid), connection -> {
+            var ps = prepare(connection, "SELECT * FROM librepremium_data WHERE premium_uuid=?");
+
+            ps.setObject(1, toDatabase(uuid));
+
+            var rs = ps.executeQuery();
+
+            return rs.next() ? getUserFromResult(rs) : null;
+        });
+
+        if (user == null && archiveAfter > 0) user = restore("premium_uuid", toDatabase(uuid));
+
+        if (user == null) {
+            rememberMissing(missingPremiumUUIDs, uuid, saves);
+            return null;
+        }
+
+        return cacheUser(user);
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    @Override
+    public Map<UUID, User> getByUUIDs(Collection<UUID> uuids) {
+        var result = new HashMap<UUID, User>(uuids.size());
+        var misses = new ArrayList<UUID>();
+
+        for (UUID uuid : uuids) {
+            var user = pendingWrites.get(uuid);
+
+            if (user == null) user = userCache.getIfPresent(uuid);
+
+            if (user != null) {
+                result.put(uuid, user);
+            } else if (missingUUIDs.getIfPresent(uuid) == null) {
+                misses.add(uuid);
+            }
+        }
+
+        var saves = saveCounter.get();
+
+        for (int i = 0; i < misses.size(); i += BULK_LOOKUP_SIZE) {
+            var chunk = misses.subList(i, Math.min(misses.size(), i + BULK_LOOKUP_SIZE));
+
+            // The caches are only touched once the connection has been released, a backend might hold a lock while it is in use
+            List<User> loaded = lookup("getByUUIDs", chunk, connection -> {
+                var ps = prepare(connection, "SELECT * FROM librepremium_data WHERE uuid IN (%s)".formatted(placeholders(chunk.size())));
+
+                for (int j = 0; j < chunk.size(); j++) {
+                    ps.setObject(j + 1, toDatabase(chunk.get(j)));
+                }
+
+                var rs = ps.executeQuery();
+                var users = new ArrayList<User>(chunk.size());
+
+                while (rs.next()) {
+                    users.add(getUserFromResult(rs));
+                }
+
+                return users;
+            });
+
+            for (User user : loaded) {
+                user = cacheUser(user);
+                result.put(user.getUuid(), user);
+            }
+
+            // The archive is not searched, a later single lookup has to be able to restore the user
+            if (archiveAfter > 0) continue;
+
+            for (UUID uuid : chunk) {
+                if (!result.containsKey(uuid)) rememberMissing(missingUUIDs, uuid, saves);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, User> getByNames(Collection<String> names) {
+        var result = new HashMap<String, User>(names.size());
+        // The lowercase nicknames to query, mapped to the names as the caller passed them
+        var misses = new HashMap<String, List<String>>();
+
+        for (String name : names) {
+            var user = getCachedByName(name);
+
+            if (user != null) {
+                result.put(name, user);
+                continue;
+            }
+
+            var key = name.toLowerCase(Locale.ROOT);
+
+            if (missingNames.getIfPresent(key) == null) misses.computeIfAbsent(key, x -> new ArrayList<>()).add(name);
+        }
+
+        var saves = saveCounter.get();
+        var keys = new ArrayList<>(misses.keySet());
+
+        for (int i = 0; i < keys.size(); i += BULK_LOOKUP_SIZE) {
+            var chunk = keys.subList(i, Math.min(keys.size(), i + BULK_LOOKUP_SIZE));
+            var found = new HashSet<String>();
+
+            // Same as in getByUUIDs, the caches are only touched once the connection has been released
+            List<User> loaded = lookup("getByNames", chunk, connection -> {
+                var ps = prepare(connection, "SELECT * FROM librepremium_data WHERE last_nickname_lower IN (%s)".formatted(placeholders(chunk.size())));
+
+                for (int j = 0; j < chunk.size(); j++) {
+                    ps.setString(j + 1, chunk.get(j));
+                }
+
+                var rs = ps.executeQuery();
+                var users = new ArrayList<User>(chunk.size());
+
+                while (rs.next()) {
+                    users.add(getUserFromResult(rs));
+                }
+
+                return users;
+            });
+
+            for (User user : loaded) {
+                user = cacheUser(user);
+
+                var key = user.getLastNickname().toLowerCase(Locale.ROOT);
+
+                found.add(key);
+
+                for (String name : misses.getOrDefault(key, List.of())) {
+                    result.put(name, user);
+                }
+            }
+
+            // Same as in getByUUIDs, the archive is not searched
+            if (archiveAfter > 0) continue;
+
+            for (String key : chunk) {
+                if (!found.contains(key)) rememberMissing(missingNames, key, saves);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public CompletableFuture<User> getByNameAsync(String name) {
+        var cached = getCachedByName(name);
+
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        return ReadWriteDatabaseProvider.super.getByNameAsync(name);
+    }
+
+    @Override
+    public CompletableFuture<User> getByUUIDAsync(UUID uuid) {
+        var cached = userCache.getIfPresent(uuid);
+
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        return ReadWriteDatabaseProvider.super.getByUUIDAsync(uuid);
+    }
+
+    @Override
+    public CompletableFuture<User> getByPremiumUUIDAsync(UUID uuid) {
+        var cached = getCachedByPremiumUUID(uuid);
+
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        return ReadWriteDatabaseProvider.super.getByPremiumUUIDAsync(uuid);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveUserAsync(User user) {
+        if (writeBehind && canQueue(user)) {
+            // Only touches memory, no need to hop threads
+            try {
+                saveUser(user);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return ReadWriteDatabaseProvider.super.saveUserAsync(user);
+    }
+
+    @Override
+    public Collection<User> getAllUsers() {
+        var users = new ArrayList<User>();
+
+        forEachUser(users::add);
+
+        return users;
+    }
+
+    /**
+     * Streams the table, bypassing the caches, so that even millions of users can be scanned in constant memory.
+     * Queued write-behind users are flushed first so that the scan sees them.
+     */
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        if (writeBehind) flush();
+
+        update("forEachUser", connection -> {
+            var ps = prepareStreaming(connection, "SELECT * FROM librepremium_data");
+
+            var rs = ps.executeQuery();
+
+            while (rs.next()) {
+                consumer.accept(getUserFromResult(rs));
+            }
+        });
+    }
+
+    @Override
+    public void saveUser(User user) {
+        if (user.isPersisted() && user.getDirtyFields().isEmpty()) return;
+
+        updateCaches(user);
+
+        if (writeBehind || !breaker.isClosed()) {
+            if (canQueue(user)) {
+                queue(user);
+                return;
+            }
+
+            // The queue is full, the callers have to slow down until it drains
+            if (!breaker.isClosed()) throw new DatabaseUnavailableException("The database is unavailable and too many saves are queued");
+        }
+
+        try {
+            writeUser(user);
+        } catch (DatabaseUnavailableException e) {
+            if (!canQueue(user)) throw e;
+
+            queue(user);
+        }
+    }
+
+    private boolean canQueue(User user) {
+        return pendingWrites.size() < MAXIMUM_PENDING_WRITES || pendingWrites.containsKey(user.getUuid());
+    }
+
+    private void queue(User user) {
+        userCache.put(user.getUuid(), user);
+        pendingWrites.put(user.getUuid(), user);
+        indexPending(user);
+
+        if (writeBehind && pendingWrites.size() >= writeBehindBatchSize && !scheduler.isShutdown()) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    private void writeUser(User user) {
+        writeUsers(List.of(user));
+    }
+
+    /**
+     * Every chunk is written in its own transaction, so that a huge save neither holds the locks for long nor gets rolled back as a whole.
+     * Meant for bulk imports, so the users are not indexed, only the caches which would hide them are cleared.
+     */
+    @Override
+    public int saveUsers(Collection<User> users) {
+        saveCounter.incrementAndGet();
+
+        for (User user : users) {
+            forgetMissing(user);
+
+            // Another instance of the user would now be outdated
+            var cached = userCache.getIfPresent(user.getUuid());
+            if (cached != null && cached != user) userCache.invalidate(user.getUuid());
+        }
+
+        var written = 0;
+        var chunk = new ArrayList<User>(Math.min(users.size(), bulkChunkSize));
+
+        for (User user : users) {
+            chunk.add(user);
+
+            if (chunk.size() >= bulkChunkSize) {
+                written += writeChunk(chunk);
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) written += writeChunk(chunk);
+
+        return written;
+    }
+
+    /**
+     * @return The amount of users of the chunk that have been written
+     */
+    private int writeChunk(List<User> chunk) {
+        try {
+            writeUsers(chunk);
+        } catch (DatabaseUnavailableException e) {
+            logger.error("Failed to write a chunk of %d users, the database is unavailable".formatted(chunk.size()));
+            return 0;
+        }
+
+        var written = 0;
+
+        for (User user : chunk) {
+            if (user.isPersisted() && user.getDirtyFields().isEmpty()) written++;
+        }
+
+        if (written < chunk.size()) logger.error("Failed to write %d of a chunk of %d users".formatted(chunk.size() - written, chunk.size()));
+
+        return written;
+    }
+
+    private void updateCaches(User user) {
+        userWritten(user);
+
+        // Covers nickname and premium UUID changes, the old entries are dropped lazily on their next hit
+        indexUser(user);
+
+        saveCounter.incrementAndGet();
+        forgetMissing(user);
+    }
+
+    private void forgetMissing(User user) {
+        missingNames.invalidate(user.getLastNickname().toLowerCase(Locale.ROOT));
+        missingUUIDs.invalidate(user.getUuid());
+        if (user.getPremiumUUID() != null) missingPremiumUUIDs.invalidate(user.getPremiumUUID());
+    }
+
+    private int bindUser(PreparedStatement ps, int index, User user) throws SQLException {
+        var password = user.getHashedPassword();
+
+        ps.setObject(index++, toDatabase(user.getUuid()));
+        ps.setObject(index++, toDatabase(user.getPremiumUUID()));
+        ps.setObject(index++, password == null ? null : password.hash());
+        ps.setObject(index++, password == null ? null : password.salt());
+        ps.setObject(index++, password == null ? null : password.algo());
+        ps.setObject(index++, user.getLastNickname());
+        ps.setObject(index++, user.getLastNickname().toLowerCase(Locale.ROOT));
+        ps.setObject(index++, user.getJoinDate());
+        ps.setObject(index++, user.getLastSeen());
+
+        return index;
+    }
+
+    /**
+     * Inserts the users which have never been persisted. Neither a user another proxy has inserted in the meantime,
+     * nor one whose nickname belongs to another user is ever overwritten. Another proxy inserting either after the check makes the plain insert fail.
+     *
+     * @param conflicts Receives the users whose UUID is already in the table, they have to be merged with the stored row
+     * @param rejected  Receives the users that can't be written
+     */
+    private void insertUsers(Connection connection, List<User> users, Set<User> conflicts, Set<User> rejected) throws SQLException {
+        var existing = new HashSet<UUID>();
+        // The lowercase nicknames, mapped to the UUID of the user they belong to
+        var owners = new HashMap<String, UUID>();
+
+        // Every user takes two parameters
+        for (int i = 0; i < users.size(); i += BULK_LOOKUP_SIZE / 2) {
+            var chunk = users.subList(i, Math.min(users.size(), i + BULK_LOOKUP_SIZE / 2));
+            var ps = prepare(connection, "SELECT uuid, last_nickname_lower FROM librepremium_data WHERE uuid IN (%1$s) OR last_nickname_lower IN (%1$s)".formatted(placeholders(chunk.size())));
+
+            for (int j = 0; j < chunk.size(); j++) {
+                var user = chunk.get(j);
+
+                ps.setObject(j + 1, toDatabase(user.getUuid()));
+                ps.setString(chunk.size() + j + 1, user.getLastNickname().toLowerCase(Locale.ROOT));
+            }
+
+            var rs = ps.executeQuery();
+
+            while (rs.next()) {
+                var uuid = readUUID(rs, "uuid");
+                var nickname = rs.getString("last_nickname_lower");
+
+                existing.add(uuid);
+                if (nickname != null) owners.put(nickname, uuid);
+            }
+        }
+
+        var fresh = new ArrayList<User>(users.size());
+        var uuids = new HashSet<UUID>();
+
+        for (User user : users) {
+            // A multi-row statement can't touch the same row twice
+            if (!uuids.add(user.getUuid())) {
+                logger.error("Could not save user %s, it has been passed more than once, only the first one is written".formatted(user.getUuid()));
+                rejected.add(user);
+                continue;
+            }
+
+            if (existing.contains(user.getUuid())) {
+                conflicts.add(user);
+                continue;
+            }
+
+            var nickname = user.getLastNickname().toLowerCase(Locale.ROOT);
+            // Also catches two users of the same batch sharing a nickname
+            var owner = owners.putIfAbsent(nickname, user.getUuid());
+
+            if (owner != null && !owner.equals(user.getUuid())) {
+                logger.error("Could not save user %s, their nickname %s belongs to user %s".formatted(user.getUuid(), user.getLastNickname(), owner));
+                rejected.add(user);
+                continue;
+            }
+
+            fresh.add(user);
+        }
+
+        insertRows(connection, fresh);
+    }
+
+    /**
+     * Sends the users as multi-row inserts, all the full statements in a single batch.
+     */
+    private void insertRows(Connection connection, List<User> users) throws SQLException {
+        var full = users.size() / INSERT_ROWS;
+
+        if (full > 0) {
+            var ps = prepare(connection, insertStatement(INSERT_ROWS));
+
+            for (int i = 0; i < full; i++) {
+                var index = 1;
+
+                for (User user : users.subList(i * INSERT_ROWS, (i + 1) * INSERT_ROWS)) {
+                    index = bindUser(ps, index, user);
+                }
+
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+        }
+
+        var remaining = users.subList(full * INSERT_ROWS, users.size());
+
+        if (!remaining.isEmpty()) {
+            var ps = prepare(connection, insertStatement(remaining.size()));
+            var index = 1;
+
+            for (User user : remaining) {
+                index = bindUser(ps, index, user);
+            }
+
+            ps.executeUpdate();
+        }
+    }
+
+    private static List<String> columnsOf(User.Field field) {
+        return switch (field) {
+            case PREMIUM_UUID -> List.of("premium_uuid");
+            case HASHED_PASSWORD -> List.of("hashed_password", "salt", "algo");
+            case LAST_NICKNAME -> List.of("last_nickname", "last_nickname_lower");
+            case JOIN_DATE -> List.of("joined");
+            case LAST_SEEN -> List.of("last_seen");
+        };
+    }
+
+    private List<Object> valuesOf(User user, User.Field field) {
+        return switch (field) {
+            case PREMIUM_UUID -> Collections.singletonList(toDatabase(user.getPremiumUUID()));
+            case HASHED_PASSWORD -> {
+                var password = user.getHashedPassword();
+                yield password == null ? Arrays.asList(null, null, null) : List.of(password.hash(), password.salt(), password.algo());
+            }
+            case LAST_NICKNAME -> List.of(user.getLastNickname(), user.getLastNickname().toLowerCase(Locale.ROOT));
+            case JOIN_DATE -> Collections.singletonList(user.getJoinDate());
+            case LAST_SEEN -> Collections.singletonList(user.getLastSeen());
+        };
+    }
+
+    private static String updateStatement(Set<User.Field> fields) {
+        var assignments = new StringJoiner(", ");
+
+        for (User.Field field : fields) {
+            for (String column : columnsOf(field)) {
+                assignments.add(column + "=?");
+            }
+        }
+
+        assignments.add("version=version+1");
+
+        return "UPDATE librepremium_data SET %s WHERE uuid=? AND version=?".formatted(assignments);
+    }
+
+    private void bindUpdate(PreparedStatement ps, User user, Set<User.Field> fields, long version) throws SQLException {
+        var index = 1;
+
+        for (User.Field field : fields) {
+            for (Object value : valuesOf(user, field)) {
+                ps.setObject(index++, value);
+            }
+        }
+
+        ps.setObject(index++, toDatabase(user.getUuid()));
+        ps.setLong(index, version);
+    }
+
+    private boolean writeUsers(Collection<User> users) {
+        return writeUsers(users, 0);
+    }
+
+    /**
+     * Users that have never been persisted are inserted as a whole, see {@link #insertUsers(Connection, List, Set)}, others only get their dirty columns updated.
+     * Updates are grouped by the set of dirty fields, so that every group can be sent as a single batch.
+     * <p>
+     * Updates only apply if the row still has the version the user has been loaded with. If another proxy has written the row
+     * in the meantime, the user is reloaded, the fields changed by the other proxy are merged in and the update is retried.
+     * An insert whose row another proxy has inserted first is treated the same way, only the fields changed since the user has been created are kept.
+     *
+     * @return Whether all the users have been written, the ones that have not been written stay dirty
+     */
+    private boolean writeUsers(Collection<User> users, int attempt) {
+        var inserts = new ArrayList<User>();
+        var updates = new HashMap<Set<User.Field>, List<User>>();
+        // Read before the dirty fields, a field changed while the write runs then stays dirty
+        var modifications = new IdentityHashMap<User, Long>();
+
+        for (User user : users) {
+            modifications.put(user, user.getModifications());
+
+            if (!user.isPersisted()) {
+                inserts.add(user);
+                continue;
+            }
+
+            var dirty = user.getDirtyFields();
+
+            if (!dirty.isEmpty()) updates.computeIfAbsent(dirty, x -> new ArrayList<>()).add(user);
+        }
+
+        if (inserts.isEmpty() && updates.isEmpty()) return true;
+
+        var versions = new IdentityHashMap<User, Long>();
+        var conflicts = Collections.newSetFromMap(new IdentityHashMap<User, Boolean>());
+        var rejected = Collections.newSetFromMap(new IdentityHashMap<User, Boolean>());
+
+        Boolean written = query("saveUsers", connection -> {
+            inTransaction(connection, transaction -> {
+                if (!inserts.isEmpty()) insertUsers(transaction, inserts, conflicts, rejected);
+
+                for (Map.Entry<Set<User.Field>, List<User>> entry : updates.entrySet()) {
+                    var fields = entry.getKey();
+                    var group = entry.getValue();
+                    var ps = prepare(transaction, updateStatement(fields));
+
+                    for (User user : group) {
+                        var version = user.getVersion();
+
+                        versions.put(user, version);
+                        bindUpdate(ps, user, fields, version);
+                        ps.addBatch();
+                    }
+
+                    var counts = ps.executeBatch();
+
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) conflicts.add(group.get(i));
+                    }
+                }
+
+                return null;
+            });
+
+            return true;
+        });
+
+        // The backend has already reported the failure, the users stay dirty so that the next save retries them
+        if (written == null) return false;
+
+        for (User user : inserts) {
+            if (rejected.contains(user) || conflicts.contains(user)) continue;
+
+            user.markPersisted(modifications.get(user));
+            user.setVersion(0);
+        }
+
+        for (Map.Entry<Set<User.Field>, List<User>> entry : updates.entrySet()) {
+            for (User user : entry.getValue()) {
+                if (conflicts.contains(user)) continue;
+
+                user.markPersisted(entry.getKey(), modifications.get(user));
+                user.setVersion(versions.get(user) + 1);
+            }
+        }
+
+        var resolved = conflicts.isEmpty() || resolveConflicts(conflicts, attempt);
+
+        return resolved && rejected.isEmpty();
+    }
+
+    private boolean resolveConflicts(Collection<User> conflicts, int attempt) {
+        if (attempt >= MAXIMUM_CONFLICT_RETRIES) {
+            logger.error("Failed to save %d users, because other proxies keep modifying them, they will be retried on their next save".formatted(conflicts.size()));
+            return false;
+        }
+
+        var failed = false;
+
+        var retry = new ArrayList<User>(conflicts.size());
+
+        for (User user : conflicts) {
+            // Always read from the primary, a replica might still have the old version
+            Optional<User> stored = query("resolveConflict", connection -> {
+                var ps = prepare(connection, "SELECT * FROM librepremium_data WHERE uuid=?");
+
+                ps.setObject(1, toDatabase(user.getUuid()));
+
+                var rs = ps.executeQuery();
+
+                return rs.next() ? Optional.of(getUserFromResult(rs)) : Optional.empty();
+            });
+
+            if (stored == null) {
+                failed = true;
+                continue;
+            }
+
+            // Might have been archived since it was loaded
+            if (stored.isEmpty() && archiveAfter > 0) stored = Optional.ofNullable(restore("uuid", toDatabase(user.getUuid())));
+
+            if (stored.isEmpty()) {
+                logger.info("User %s has been deleted by another proxy, discarding the changes".formatted(user.getUuid()));
+                userCache.invalidate(user.getUuid());
+                continue;
+            }
+
+            user.mergeFrom(stored.get());
+            retry.add(user);
+        }
+
+        return writeUsers(retry, attempt + 1) && !failed;
+    }
+
+    private static <T> T inTransaction(Connection connection, ConnectionFunction<T> function) throws SQLException {
+        var autoCommit = connection.getAutoCommit();
+
+        connection.setAutoCommit(false);
+
+        try {
+            var result = function.apply(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    @Override
+    public void deleteUser(User user) {
+        synchronized (flushLock) {
+            // Must not be resurrected by a later flush, waits for a running flush to finish
+            pendingWrites.remove(user.getUuid());
+            flushFailures.remove(user.getUuid());
+        }
+
+        userWritten(user);
+
+        update("deleteUser", connection -> {
+            var ps = prepare(connection, "DELETE FROM librepremium_data WHERE uuid=?");
+
+            ps.setObject(1, toDatabase(user.getUuid()));
+
+            ps.executeUpdate();
+
+            var archived = prepare(connection, "DELETE FROM librepremium_archive WHERE uuid=?");
+
+            archived.setObject(1, toDatabase(user.getUuid()));
+
+            archived.executeUpdate();
+        });
+
+        userCache.invalidate(user.getUuid());
+        nameIndex.invalidate(user.getLastNickname().toLowerCase(Locale.ROOT));
+        if (user.getPremiumUUID() != null) premiumIndex.invalidate(user.getPremiumUUID());
+    }
+
+    /**
+     * Moves a user back from the archive table, see {@link #archiveInactive()}.
+     * Runs on the primary, as it writes, and throws if it fails. Restoring is idempotent, so another proxy restoring the same user is harmless.
+     * A user whose nickname has been taken by another user can't be restored, this is remembered for a while.
+     *
+     * @param column The column the key is compared with
+     * @return The restored user, or null if there is no such user in the archive, or it can't be restored
+     */
+    @Nullable
+    private User restore(String column, Object key) {
+        return guard("restore", true, connection -> {
+            var find = prepare(connection, "SELECT uuid FROM librepremium_archive WHERE %s=? ORDER BY last_seen DESC LIMIT 1".formatted(column));
+
+            find.setObject(1, key);
+
+            var found = find.executeQuery();
+
+            if (!found.next()) return null;
+
+            var archived = readUUID(found, "uuid");
+
+            if (unrestorable.getIfPresent(archived) != null) return null;
+
+            var uuid = toDatabase(archived);
+
+            return inTransaction(connection, transaction -> {
+                // Skips the row if another proxy has restored it first
+                var copy = prepare(transaction, insertIgnoringConflicts("librepremium_data", "SELECT %s FROM librepremium_archive WHERE uuid=?".formatted(COLUMNS)));
+
+                copy.setObject(1, uuid);
+                copy.executeUpdate();
+
+                var select = prepare(transaction, "SELECT * FROM librepremium_data WHERE uuid=?");
+
+                select.setObject(1, uuid);
+
+                var rs = select.executeQuery();
+
+                if (!rs.next()) {
+                    logger.warn("Could not restore the archived user %s, their nickname is now used by another user".formatted(archived));
+                    unrestorable.put(archived, Boolean.TRUE);
+                    return null;
+                }
+
+                var user = getUserFromResult(rs);
+                var delete = prepare(transaction, "DELETE FROM librepremium_archive WHERE uuid=?");
+
+                delete.setObject(1, uuid);
+                delete.executeUpdate();
+
+                return user;
+            });
+        }, this::runFunction);
+    }
+
+    /**
+     * Moves the users who have not been seen for the configured amount of days to the archive table, in batches.
+     * Their rows are moved back by {@link #restore(String, Object)} once they are looked up again.
+     */
+    public void archiveInactive() {
+        if (archiveAfter <= 0 || !archiving.compareAndSet(false, true)) return;
+
+        try {
+            var start = System.currentTimeMillis();
+            var cutoff = new Timestamp(start - TimeUnit.DAYS.toMillis(archiveAfter));
+            var archived = 0;
+
+            while (true) {
+                List<UUID> batch = query("archive", connection -> inTransaction(connection, transaction -> {
+                    var select = prepare(transaction, "SELECT uuid FROM librepremium_data WHERE last_seen<? ORDER BY last_seen LIMIT ?");
+
+                    select.setTimestamp(1, cutoff);
+                    select.setInt(2, ARCHIVE_BATCH_SIZE);
+
+                    var rs = select.executeQuery();
+                    var uuids = new ArrayList<UUID>(ARCHIVE_BATCH_SIZE);
+
+                    while (rs.next()) {
+                        uuids.add(readUUID(rs, "uuid"));
+                    }
+
+                    if (uuids.isEmpty()) return uuids;
+
+                    var copy = prepare(transaction, insertIgnoringConflicts("librepremium_archive", "SELECT %s FROM librepremium_data WHERE uuid IN (%s)".formatted(COLUMNS, placeholders(uuids.size()))));
+                    var delete = prepare(transaction, "DELETE FROM librepremium_data WHERE uuid IN (%s)".formatted(placeholders(uuids.size())));
+
+                    for (int i = 0; i < uuids.size(); i++) {
+                        var uuid = toDatabase(uuids.get(i));
+
+                        copy.setObject(i + 1, uuid);
+                        delete.setObject(i + 1, uuid);
+                    }
+
+                    copy.executeUpdate();
+                    delete.executeUpdate();
+
+                    return uuids;
+                }));
+
+                if (batch == null) break;
+
+                userCache.invalidateAll(batch);
+                archived += batch.size();
+
+                if (batch.size() < ARCHIVE_BATCH_SIZE) break;
+            }
+
+            if (archived > 0) {
+                logger.info("Archived %d inactive users, took %d ms".formatted(archived, System.currentTimeMillis() - start));
+            }
+        } catch (DatabaseUnavailableException ignored) {
+            // Retried on the next run
+        } finally {
+            archiving.set(false);
+        }
+    }
+
+    /**
+     * Loads the most recently seen users into the caches in the background, so that they don't have to be queried when they reconnect.
+     *
+     * @param count  The maximum amount of users to load
+     * @param maxAge Only users seen within this many days are loaded, 0 means no limit
+     */
+    public CompletableFuture<Void> warmUp(int count, int maxAge) {
+        return CompletableFuture.runAsync(() -> {
+            var start = System.currentTimeMillis();
+            var since = maxAge <= 0 ? new Timestamp(0) : new Timestamp(start - TimeUnit.DAYS.toMillis(maxAge));
+
+            // The caches are only filled once the connection has been released, see getByUUIDs
+            List<User> loaded = query("warmUp", connection -> {
+                var ps = prepareStreaming(connection, "SELECT * FROM librepremium_data WHERE last_seen>=? ORDER BY last_seen DESC LIMIT ?");
+
+                ps.setTimestamp(1, since);
+                ps.setInt(2, count);
+
+                var rs = ps.executeQuery();
+                var users = new ArrayList<User>();
+
+                while (rs.next()) {
+                    users.add(getUserFromResult(rs));
+                }
+
+                return users;
+            });
+
+            if (loaded == null) return;
+
+            for (User user : loaded) {
+                cacheUser(user);
+            }
+
+            logger.info("Warmed up the cache with %d users in %d ms".formatted(loaded.size(), System.currentTimeMillis() - start));
+        }, executor);
+    }
+
+    /**
+     * Writes all queued users in a single batch. Users saved while the batch is being written stay queued for the next flush.
+     */
+    private void flush() {
+        synchronized (flushLock) {
+            if (pendingWrites.isEmpty()) return;
+
+            var batch = new ArrayList<User>(pendingWrites.size());
+
+            for (UUID uuid : pendingWrites.keySet()) {
+                var user = pendingWrites.remove(uuid);
+
+                if (user != null) batch.add(user);
+            }
+
+            // Drops the index entries of users which are no longer queued, the requeued ones are indexed again
+            pendingNames.values().removeIf(uuid -> !pendingWrites.containsKey(uuid));
+            pendingPremiumUUIDs.values().removeIf(uuid -> !pendingWrites.containsKey(uuid));
+
+            try {
+                if (writeUsers(batch)) {
+                    if (!flushFailures.isEmpty()) batch.forEach(user -> flushFailures.remove(user.getUuid()));
+                    return;
+                }
+
+                // The whole chunk has been rolled back, write the users one by one, so that a single bad row does not hold up the others
+                var failed = new ArrayList<User>();
+
+                for (User user : batch) {
+                    if (writeUsers(List.of(user))) {
+                        flushFailures.remove(user.getUuid());
+                    } else {
+                        failed.add(user);
+                    }
+                }
+
+                if (!failed.isEmpty()) retry(failed);
+            } catch (DatabaseUnavailableException e) {
+                // Retried once the connection is restored, does not count as a failed attempt
+                requeue(batch);
+            } catch (Exception e) {
+                logger.error("Failed to flush %d queued users".formatted(batch.size()));
+                e.printStackTrace();
+
+                retry(batch);
+            }
+        }
+    }
+
+    /**
+     * Requeues users whose write has failed, but drops the ones which have failed too often, they would otherwise be retried forever.
+     */
+    private void retry(Collection<User> users) {
+        var requeued = new ArrayList<User>(users.size());
+
+        for (User user : users) {
+            var attempts = flushFailures.merge(user.getUuid(), 1, Integer::sum);
+
+            if (attempts < MAXIMUM_FLUSH_ATTEMPTS) {
+                requeued.add(user);
+                continue;
+            }
+
+            flushFailures.remove(user.getUuid());
+            logger.error("Gave up on writing user %s after %d failed attempts, their unsaved changes are lost".formatted(user.getUuid(), attempts));
+        }
+
+        if (requeued.isEmpty()) return;
+
+        logger.warn("Failed to flush %d queued users, they will be retried".formatted(requeued.size()));
+        requeue(requeued);
+    }
+
+    /**
+     * Puts the users back into the write-behind queue, unless they have been saved again in the meantime.
+     */
+    private void requeue(Collection<User> users) {
+        for (User user : users) {
+            if (pendingWrites.putIfAbsent(user.getUuid(), user) == null) indexPending(user);
+        }
+    }
+
+    private void indexPending(User user) {
+        pendingNames.put(user.getLastNickname().toLowerCase(Locale.ROOT), user.getUuid());
+        if (user.getPremiumUUID() != null) pendingPremiumUUIDs.put(user.getPremiumUUID(), user.getUuid());
+    }
+
+    public void disable() {
+        scheduler.shutdown();
+
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Anything saved from now on is written directly
+        writeBehind = false;
+        flush();
+
+        if (!pendingWrites.isEmpty()) {
+            logger.error("%d users could not be saved, because the database is unavailable".formatted(pendingWrites.size()));
+        }
+
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Some database tasks did not finish in time, they will be dropped");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        closeDatabase();
+    }
+
+    @FunctionalInterface
+    protected interface ConnectionTask {
+        void run(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    protected interface ConnectionFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,80 @@
+package xyz.kyngs.librepremium.common.database;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks whether the database is reachable. Once the connection is lost, requests are refused until the backoff elapses,
+ * then a single request is let through to probe the connection. Every failed probe doubles the backoff.
+ *
+ * @author kyngs
+ */
+class CircuitBreaker {
+
+    private static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAXIMUM_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+
+    private State state;
+    private long backoff;
+    private long nextAttempt;
+
+    CircuitBreaker() {
+        state = State.CLOSED;
+        backoff = 0;
+    }
+
+    /**
+     * @return Whether a request may reach the database
+     */
+    synchronized boolean allowRequest() {
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> false;
+            case OPEN -> {
+                if (System.currentTimeMillis() < nextAttempt) yield false;
+
+                state = State.HALF_OPEN;
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * @return Whether this closed the breaker, meaning the connection has just been restored
+     */
+    synchronized boolean recordSuccess() {
+        if (state == State.CLOSED) return false;
+
+        state = State.CLOSED;
+        backoff = 0;
+        return true;
+    }
+
+    /**
+     * Opens the breaker after the connection has been lost.
+     *
+     * @return The delay before the next probe in milliseconds, or -1 if the breaker has already been open
+     */
+    synchronized long trip() {
+        if (state == State.OPEN) return -1;
+
+        backoff = backoff == 0 ? INITIAL_BACKOFF : Math.min(backoff * 2, MAXIMUM_BACKOFF);
+        nextAttempt = System.currentTimeMillis() + backoff;
+        state = State.OPEN;
+
+        return backoff;
+    }
+
+    synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    synchronized boolean isHalfOpen() {
+        return state == State.HALF_OPEN;
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
@@ -0,0 +1,15 @@
+package xyz.kyngs.librepremium.common.database;
+
+/**
+ * Thrown when the database has to be queried, but the connection to it is currently lost, or when a lookup fails.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+
+    public DatabaseUnavailableException() {
+        super("The database is currently unavailable");
+    }
+
+    public DatabaseUnavailableException(String message) {
+        super(message);
+    }
+}
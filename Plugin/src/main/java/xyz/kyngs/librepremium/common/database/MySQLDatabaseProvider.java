@@ -8,258 +8,340 @@ import xyz.kyngs.easydb.provider.mysql.MySQL;
 import xyz.kyngs.easydb.provider.mysql.MySQLConfig;
 import xyz.kyngs.librepremium.api.Logger;
 import xyz.kyngs.librepremium.api.configuration.PluginConfiguration;
-import xyz.kyngs.librepremium.api.crypto.HashedPassword;
-import xyz.kyngs.librepremium.api.database.ReadWriteDatabaseProvider;
 import xyz.kyngs.librepremium.api.database.User;
-import xyz.kyngs.librepremium.common.util.MultipleSetter;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigration;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigrator;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.UUID;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-public class MySQLDatabaseProvider implements ReadWriteDatabaseProvider {
+public class MySQLDatabaseProvider extends AuthenticDatabaseProvider {
+
+    // Matches a textual UUID column which UNHEX can convert
+    private static final String WELL_FORMED_UUID = "REPLACE(%s, '-', '') REGEXP '^[0-9a-fA-F]{32}$'";
 
     private final EasyDB<MySQL, Connection, SQLException> easyDB;
-    private final Cache<UUID, User> userCache;
-    private final Logger logger;
+    private final List<Replica> replicas;
+    private final boolean leastLatency;
+    private final AtomicInteger replicaTurn;
+    private final Cache<Object, Boolean> pinnedToPrimary;
 
     public MySQLDatabaseProvider(PluginConfiguration configuration, Logger logger) {
-        this.logger = logger;
+        super(configuration, logger);
+
+        easyDB = connect(configuration, configuration.getDatabaseHost(), configuration.getDatabasePort(), this::handleConnectionException, this::handleException);
+
+        replicas = new ArrayList<>();
 
-        userCache = Caffeine.newBuilder()
-                .expireAfterAccess(10, TimeUnit.MINUTES)
+        for (String address : configuration.getDatabaseReplicas()) {
+            var separator = address.lastIndexOf(':');
+            var host = separator == -1 ? address : address.substring(0, separator);
+            var port = separator == -1 ? configuration.getDatabasePort() : Integer.parseInt(address.substring(separator + 1));
+
+            replicas.add(new Replica(connect(configuration, host, port, e -> handleReplicaConnectionException(address, e), this::handleReplicaException)));
+        }
+
+        leastLatency = configuration.getDatabaseReplicaRouting().equalsIgnoreCase("least-latency");
+        replicaTurn = new AtomicInteger();
+        pinnedToPrimary = Caffeine.newBuilder()
+                .expireAfterWrite(configuration.getDatabaseReplicaPinTime(), TimeUnit.MILLISECONDS)
+                .maximumSize(100000)
                 .build();
 
-        easyDB = new EasyDB<>(
+        if (!replicas.isEmpty()) {
+            logger.info("Routing lookups over %d read replicas (%s)".formatted(replicas.size(), leastLatency ? "least-latency" : "round-robin"));
+        }
+
+        validateTables();
+    }
+
+    private EasyDB<MySQL, Connection, SQLException> connect(PluginConfiguration configuration, String host, int port, Function<Exception, Boolean> connectionExceptionHandler, Function<Exception, Boolean> exceptionHandler) {
+        return new EasyDB<>(
                 new EasyDBConfig<>(
                         new MySQL(
                                 new MySQLConfig()
                                         .setUsername(configuration.getDatabaseUser())
                                         .setPassword(configuration.getDatabasePassword())
-                                        .setJdbcUrl("jdbc:mysql://%s:%s/%s?autoReconnect=true".formatted(configuration.getDatabaseHost(), configuration.getDatabasePort(), configuration.getDatabaseName()))
+                                        .setJdbcUrl("jdbc:mysql://%s:%s/%s?autoReconnect=true&rewriteBatchedStatements=true".formatted(host, port, configuration.getDatabaseName()))
                         )
                 )
-                        .setExceptionHandler(this::handleException)
-                        .setConnectionExceptionHandler(this::handleConnectionException)
+                        .setExceptionHandler(exceptionHandler::apply)
+                        .setConnectionExceptionHandler(connectionExceptionHandler::apply)
                         .useGlobalExecutor(true)
         );
-
-        validateTables();
     }
 
     private void validateTables() {
-        easyDB.runTaskSync(connection -> connection.prepareStatement(
-                "CREATE TABLE IF NOT EXISTS librepremium_data(" +
-                        "uuid VARCHAR(256) NOT NULL PRIMARY KEY," +
-                        "premium_uuid VARCHAR(256)," +
-                        "hashed_password VARCHAR(256)," +
-                        "salt VARCHAR(256)," +
-                        "algo VARCHAR(256)," +
-                        "last_nickname VARCHAR(256) NOT NULL," +
-                        "joined TIMESTAMP NOT NULL," +
-                        "last_seen TIMESTAMP NOT NULL" +
-                        ")"
-        ).executeUpdate());
+        var migrator = new SchemaMigrator(logger, SchemaMigrator.MYSQL_LOCK, List.of(
+                new SchemaMigration(1, "Create the data table", connection -> connection.prepareStatement(
+                        "CREATE TABLE IF NOT EXISTS librepremium_data(" +
+                                "uuid VARCHAR(256) NOT NULL PRIMARY KEY," +
+                                "premium_uuid VARCHAR(256)," +
+                                "hashed_password VARCHAR(256)," +
+                                "salt VARCHAR(256)," +
+                                "algo VARCHAR(256)," +
+                                "last_nickname VARCHAR(256) NOT NULL," +
+                                "joined TIMESTAMP NOT NULL," +
+                                "last_seen TIMESTAMP NOT NULL" +
+                                ")"
+                ).executeUpdate()),
+                new SchemaMigration(2, "Index the last nickname", connection ->
+                        SchemaMigrator.createIndexIfAbsent(connection, "librepremium_data", "librepremium_data_last_nickname", "last_nickname")
+                ),
+                new SchemaMigration(3, "Index the premium UUID", connection ->
+                        SchemaMigrator.createIndexIfAbsent(connection, "librepremium_data", "librepremium_data_premium_uuid", "premium_uuid")
+                ),
+                new SchemaMigration(4, "Store UUIDs as BINARY(16)", this::convertUUIDColumns),
+                new SchemaMigration(5, "Index the last seen date", connection ->
+                        SchemaMigrator.createIndexIfAbsent(connection, "librepremium_data", "librepremium_data_last_seen", "last_seen")
+                ),
+                new SchemaMigration(6, "Add the row version", connection ->
+                        SchemaMigrator.addColumnIfAbsent(connection, "librepremium_data", "version", "BIGINT NOT NULL DEFAULT 0")
+                ),
+                new SchemaMigration(7, "Add the lowercase nickname", connection -> {
+                    // Binary collation, so that the unique index compares exactly like on the other databases
+                    SchemaMigrator.addColumnIfAbsent(connection, "librepremium_data", "last_nickname_lower", "VARCHAR(256) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin");
+                    normalizeNicknames(connection);
+
+                    if (SchemaMigrator.indexExists(connection, "librepremium_data", "librepremium_data_last_nickname")) {
+                        connection.prepareStatement("DROP INDEX librepremium_data_last_nickname ON librepremium_data").executeUpdate();
+                    }
+
+                    if (!SchemaMigrator.indexExists(connection, "librepremium_data", "librepremium_data_last_nickname_lower")) {
+                        connection.prepareStatement("CREATE UNIQUE INDEX librepremium_data_last_nickname_lower ON librepremium_data(last_nickname_lower)").executeUpdate();
+                    }
+                }),
+                new SchemaMigration(8, "Create the archive table", connection -> connection.prepareStatement(
+                        "CREATE TABLE IF NOT EXISTS librepremium_archive(" +
+                                "uuid BINARY(16) NOT NULL PRIMARY KEY," +
+                                "premium_uuid BINARY(16)," +
+                                "hashed_password VARCHAR(256)," +
+                                "salt VARCHAR(256)," +
+                                "algo VARCHAR(256)," +
+                                "last_nickname VARCHAR(256) NOT NULL," +
+                                "last_nickname_lower VARCHAR(256) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin," +
+                                "joined TIMESTAMP NOT NULL," +
+                                "last_seen TIMESTAMP NOT NULL," +
+                                "version BIGINT NOT NULL DEFAULT 0," +
+                                // Not unique, a nickname might have been archived more than once
+                                "INDEX librepremium_archive_last_nickname_lower(last_nickname_lower)," +
+                                "INDEX librepremium_archive_premium_uuid(premium_uuid)" +
+                                ")"
+                ).executeUpdate())
+        ));
+
+        migrate(migrator);
+    }
+
+    /**
+     * Converts the textual UUID columns in place. The new columns are filled in small batches, so that the table stays usable
+     * while a large network converts, only the final swap of the columns locks the table.
+     */
+    private void convertUUIDColumns(Connection connection) throws SQLException {
+        var type = connection.prepareStatement("SELECT data_type FROM information_schema.columns WHERE table_schema=DATABASE() AND table_name='librepremium_data' AND column_name='uuid'")
+                .executeQuery();
+
+        if (type.next() && type.getString(1).equalsIgnoreCase("binary")) return;
+
+        var hasBinary = connection.prepareStatement("SELECT 1 FROM information_schema.columns WHERE table_schema=DATABASE() AND table_name='librepremium_data' AND column_name='uuid_bin'")
+                .executeQuery()
+                .next();
+
+        if (!hasBinary) {
+            connection.prepareStatement("ALTER TABLE librepremium_data ADD COLUMN uuid_bin BINARY(16), ADD COLUMN premium_uuid_bin BINARY(16)")
+                    .executeUpdate();
+        }
+
+        // Malformed UUIDs would stay NULL after UNHEX, which would never end the loop, they are reported below instead
+        var fill = connection.prepareStatement(
+                "UPDATE librepremium_data SET uuid_bin=UNHEX(REPLACE(uuid, '-', '')), premium_uuid_bin=UNHEX(REPLACE(premium_uuid, '-', '')) " +
+                        "WHERE uuid_bin IS NULL AND %s AND (premium_uuid IS NULL OR %s) LIMIT 5000".formatted(WELL_FORMED_UUID.formatted("uuid"), WELL_FORMED_UUID.formatted("premium_uuid"))
+        );
+
+        var converted = 0L;
+        int batch;
+
+        while ((batch = fill.executeUpdate()) > 0) {
+            converted += batch;
+            logger.info("Converted %d UUIDs so far".formatted(converted));
+        }
+
+        var malformed = connection.prepareStatement("SELECT uuid, premium_uuid FROM librepremium_data WHERE uuid_bin IS NULL LIMIT 10")
+                .executeQuery();
+
+        if (malformed.next()) {
+            var rows = new ArrayList<String>();
+
+            do {
+                rows.add("%s (premium UUID %s)".formatted(malformed.getString("uuid"), malformed.getString("premium_uuid")));
+            } while (malformed.next());
+
+            throw new SQLException("Could not convert the UUIDs, some users have malformed UUIDs, fix or delete them and restart: " + String.join(", ", rows));
+        }
+
+        connection.prepareStatement(
+                "ALTER TABLE librepremium_data " +
+                        "DROP PRIMARY KEY," +
+                        "DROP INDEX librepremium_data_premium_uuid," +
+                        "DROP COLUMN uuid," +
+                        "DROP COLUMN premium_uuid," +
+                        "CHANGE uuid_bin uuid BINARY(16) NOT NULL," +
+                        "CHANGE premium_uuid_bin premium_uuid BINARY(16)," +
+                        "ADD PRIMARY KEY(uuid)," +
+                        "ADD INDEX librepremium_data_premium_uuid(premium_uuid)"
+        ).executeUpdate();
     }
 
     private boolean handleConnectionException(Exception e) {
-        logger.error("!! LOST CONNECTION TO THE DATABASE, THE PROXY IS GOING TO SHUT DOWN TO PREVENT DAMAGE !!");
+        connectionLost(e);
+        return true;
+    }
+
+    private boolean handleReplicaConnectionException(String address, Exception e) {
+        logger.error("Lost connection to the read replica %s, lookups will fall back to the primary".formatted(address));
         e.printStackTrace();
-        System.exit(1);
-        //Won't return anyway
         return true;
     }
 
     private boolean handleException(Exception e) {
+        if (isConnectionError(e)) {
+            connectionLost(e);
+        } else {
+            logger.error("Encountered an exception while querying the database, see /librepremium database stats for the query latencies");
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    private boolean handleReplicaException(Exception e) {
         e.printStackTrace();
         return true;
     }
 
     @Override
-    public User getByName(String name) {
-        return easyDB.runFunctionSync(connection -> {
-            var ps = connection.prepareStatement("SELECT * FROM librepremium_data WHERE last_nickname=?");
-
-            ps.setString(1, name);
-
-            var rs = ps.executeQuery();
-
-            if (rs.next()) {
-                var id = UUID.fromString(rs.getString("uuid"));
-                var premiumUUID = rs.getString("premium_uuid");
-                var hashedPassword = rs.getString("hashed_password");
-                var salt = rs.getString("salt");
-                var algo = rs.getString("algo");
-                var lastNickname = rs.getString("last_nickname");
-                var joinDate = rs.getTimestamp("joined");
-                var lastSeen = rs.getTimestamp("last_seen");
-
-                return userCache.get(id, x -> new User(
-                        id,
-                        premiumUUID == null ? null : UUID.fromString(premiumUUID),
-                        hashedPassword == null ? null : new HashedPassword(
-                                hashedPassword,
-                                salt,
-                                algo
-                        ),
-                        lastNickname,
-                        joinDate,
-                        lastSeen
-                ));
-            } else return null;
-
-        });
+    protected void runTask(ConnectionTask task) {
+        easyDB.runTaskSync(task::run);
     }
 
     @Override
-    public User getByUUID(UUID uuid) {
-        return userCache.get(uuid, x -> easyDB.runFunctionSync(connection -> {
-            var ps = connection.prepareStatement("SELECT * FROM librepremium_data WHERE uuid=?");
-
-            ps.setString(1, uuid.toString());
-
-            var rs = ps.executeQuery();
-
-            if (rs.next()) {
-                var id = UUID.fromString(rs.getString("uuid"));
-                var premiumUUID = rs.getString("premium_uuid");
-                var hashedPassword = rs.getString("hashed_password");
-                var salt = rs.getString("salt");
-                var algo = rs.getString("algo");
-                var lastNickname = rs.getString("last_nickname");
-                var joinDate = rs.getTimestamp("joined");
-                var lastSeen = rs.getTimestamp("last_seen");
-
-                return new User(
-                        id,
-                        premiumUUID == null ? null : UUID.fromString(premiumUUID),
-                        hashedPassword == null ? null : new HashedPassword(
-                                hashedPassword,
-                                salt,
-                                algo
-                        ),
-                        lastNickname,
-                        joinDate,
-                        lastSeen
-                );
-            } else return null;
-
-        }));
+    protected <T> T runFunction(ConnectionFunction<T> function) {
+        return easyDB.runFunctionSync(function::apply);
     }
 
+    /**
+     * Lookups of recently saved users stay on the primary, replicas might not have received the change yet.
+     * A lookup which fails on a replica is repeated on the primary, so a broken replica only costs latency.
+     */
     @Override
-    public User getByPremiumUUID(UUID uuid) {
-        return easyDB.runFunctionSync(connection -> {
-            var ps = connection.prepareStatement("SELECT * FROM librepremium_data WHERE premium_uuid=?");
-
-            ps.setString(1, uuid.toString());
-
-            var rs = ps.executeQuery();
-
-            if (rs.next()) {
-                var id = UUID.fromString(rs.getString("uuid"));
-                var premiumUUID = rs.getString("premium_uuid");
-                var hashedPassword = rs.getString("hashed_password");
-                var salt = rs.getString("salt");
-                var algo = rs.getString("algo");
-                var lastNickname = rs.getString("last_nickname");
-                var joinDate = rs.getTimestamp("joined");
-                var lastSeen = rs.getTimestamp("last_seen");
-
-                return userCache.get(id, x -> new User(
-                        id,
-                        premiumUUID == null ? null : UUID.fromString(premiumUUID),
-                        hashedPassword == null ? null : new HashedPassword(
-                                hashedPassword,
-                                salt,
-                                algo
-                        ),
-                        lastNickname,
-                        joinDate,
-                        lastSeen
-                ));
-            } else return null;
+    protected <T> T runLookup(Collection<?> keys, ConnectionFunction<T> function) {
+        if (replicas.isEmpty() || isPinned(keys)) return runFunction(function);
+
+        var replica = chooseReplica();
+        var succeeded = new AtomicBoolean();
+        var start = System.nanoTime();
+
+        T result = replica.easyDB.runFunctionSync(connection -> {
+            var value = function.apply(connection);
+            succeeded.set(true);
+            return value;
         });
-    }
 
-    @Override
-    public Collection<User> getAllUsers() {
-        throw new UnsupportedOperationException();
+        if (!succeeded.get()) {
+            replica.penalize();
+            return runFunction(function);
+        }
+
+        replica.record(System.nanoTime() - start);
+
+        return result;
     }
 
-    @Override
-    public void saveUser(User user) {
-        easyDB.runTaskSync(connection -> {
-            var ps = connection.prepareStatement("INSERT INTO librepremium_data(uuid, premium_uuid, hashed_password, salt, algo, last_nickname, joined, last_seen) VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE uuid=?, premium_uuid=?, hashed_password=?, salt=?, algo=?, last_nickname=?, joined=?, last_seen=?");
+    private boolean isPinned(Collection<?> keys) {
+        for (Object key : keys) {
+            if (pinnedToPrimary.getIfPresent(key) != null) return true;
+        }
 
-            var password = user.getHashedPassword();
+        return false;
+    }
 
-            var setter = new MultipleSetter();
+    private Replica chooseReplica() {
+        var turn = replicaTurn.getAndIncrement();
 
-            setter.set(1, user.getUuid().toString());
-            setter.set(2, user.getPremiumUUID() == null ? null : user.getPremiumUUID().toString());
-            setter.set(3, password == null ? null : password.hash());
-            setter.set(4, password == null ? null : password.salt());
-            setter.set(5, password == null ? null : password.algo());
-            setter.set(6, user.getLastNickname());
-            setter.set(7, user.getJoinDate());
-            setter.set(8, user.getLastSeen());
+        // Every few lookups take the round-robin choice anyway, so that a replica which was slow once can prove it has recovered
+        if (leastLatency && turn % 16 != 0) {
+            var best = replicas.get(0);
 
-            setter.apply(ps, 2);
+            for (Replica replica : replicas) {
+                if (replica.latency < best.latency) best = replica;
+            }
 
-            ps.executeUpdate();
-        });
+            return best;
+        }
+
+        return replicas.get(Math.floorMod(turn, replicas.size()));
     }
 
     @Override
-    public void saveUsers(Collection<User> users) {
-        easyDB.runTaskSync(connection -> {
-            var ps = connection.prepareStatement("INSERT INTO librepremium_data(uuid, premium_uuid, hashed_password, salt, algo, last_nickname, joined, last_seen) VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE uuid=?, premium_uuid=?, hashed_password=?, salt=?, algo=?, last_nickname=?, joined=?, last_seen=?");
-
-            for (User user : users) {
-                try {
-                    var setter = new MultipleSetter();
-                    var password = user.getHashedPassword();
-
-                    setter.set(1, user.getUuid().toString());
-                    setter.set(2, user.getPremiumUUID() == null ? null : user.getPremiumUUID().toString());
-                    setter.set(3, password == null ? null : password.hash());
-                    setter.set(4, password == null ? null : password.salt());
-                    setter.set(5, password == null ? null : password.algo());
-                    setter.set(6, user.getLastNickname());
-                    setter.set(7, user.getJoinDate());
-                    setter.set(8, user.getLastSeen());
-
-                    setter.apply(ps, 2);
-
-                    ps.addBatch();
-                } catch (Exception e) {
-                    logger.error("Failed to save user %s, omitting".formatted(user.getUuid()));
-                    e.printStackTrace();
-                }
-
-            }
+    protected void userWritten(User user) {
+        if (replicas.isEmpty()) return;
 
-            ps.executeBatch();
-        });
+        pinnedToPrimary.put(user.getUuid(), Boolean.TRUE);
+        pinnedToPrimary.put(user.getLastNickname().toLowerCase(Locale.ROOT), Boolean.TRUE);
+        if (user.getPremiumUUID() != null) pinnedToPrimary.put(user.getPremiumUUID(), Boolean.TRUE);
     }
 
+    /**
+     * Makes the MySQL driver stream the rows one by one instead of loading the whole result set.
+     */
     @Override
-    public void deleteUser(User user) {
-        easyDB.runTaskSync(connection -> {
-            var ps = connection.prepareStatement("DELETE FROM librepremium_data WHERE uuid=?");
+    protected PreparedStatement prepareStreaming(Connection connection, String sql) throws SQLException {
+        var ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
-            ps.setString(1, user.getUuid().toString());
+        ps.setFetchSize(Integer.MIN_VALUE);
 
-            ps.executeUpdate();
-        });
+        return ps;
+    }
 
-        userCache.invalidate(user.getUuid());
+    @Override
+    protected String insertIgnoringConflicts(String table, String select) {
+        return "INSERT IGNORE INTO %s(%s) %s".formatted(table, COLUMNS, select);
     }
 
-    public void disable() {
+    @Override
+    protected void closeDatabase() {
+        for (Replica replica : replicas) {
+            replica.easyDB.stop();
+        }
+
         easyDB.stop();
     }
+
+    private static final class Replica {
+
+        private final EasyDB<MySQL, Connection, SQLException> easyDB;
+        // Exponentially weighted moving average of the lookup time in nanoseconds, lost updates don't matter
+        private volatile double latency;
+
+        private Replica(EasyDB<MySQL, Connection, SQLException> easyDB) {
+            this.easyDB = easyDB;
+        }
+
+        private void record(long nanos) {
+            latency = latency == 0 ? nanos : latency * 0.8 + nanos * 0.2;
+        }
+
+        private void penalize() {
+            latency += TimeUnit.SECONDS.toNanos(1);
+        }
+    }
 }
@@ -0,0 +1,161 @@
+package xyz.kyngs.librepremium.common.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.jetbrains.annotations.Nullable;
+import xyz.kyngs.librepremium.api.Logger;
+import xyz.kyngs.librepremium.api.configuration.PluginConfiguration;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigration;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+public class PostgreSQLDatabaseProvider extends AuthenticDatabaseProvider {
+
+    private final HikariDataSource dataSource;
+
+    public PostgreSQLDatabaseProvider(PluginConfiguration configuration, Logger logger) {
+        super(configuration, logger);
+
+        var config = new HikariConfig();
+
+        config.setPoolName("LibrePremium-PostgreSQL");
+        config.setDriverClassName("org.postgresql.Driver");
+        config.setJdbcUrl("jdbc:postgresql://%s:%s/%s".formatted(configuration.getDatabaseHost(), configuration.getDatabasePort(), configuration.getDatabaseName()));
+        config.setUsername(configuration.getDatabaseUser());
+        config.setPassword(configuration.getDatabasePassword());
+        config.setMaximumPoolSize(Math.max(2, configuration.getDatabaseAsyncThreads()));
+        // Statements are prepared on the server the first time they are used, and cached per pooled connection
+        config.addDataSourceProperty("prepareThreshold", 1);
+        config.addDataSourceProperty("preparedStatementCacheQueries", 256);
+        // Makes the driver send batches as multi-row statements
+        config.addDataSourceProperty("reWriteBatchedInserts", true);
+
+        dataSource = new HikariDataSource(config);
+
+        validateTables();
+    }
+
+    private void validateTables() {
+        var migrator = new SchemaMigrator(logger, SchemaMigrator.POSTGRESQL_LOCK, List.of(
+                new SchemaMigration(1, "Create the data table", connection -> connection.prepareStatement(
+                        "CREATE TABLE IF NOT EXISTS librepremium_data(" +
+                                "uuid UUID NOT NULL PRIMARY KEY," +
+                                "premium_uuid UUID," +
+                                "hashed_password VARCHAR(256)," +
+                                "salt VARCHAR(256)," +
+                                "algo VARCHAR(256)," +
+                                "last_nickname VARCHAR(256) NOT NULL," +
+                                "joined TIMESTAMP NOT NULL," +
+                                "last_seen TIMESTAMP NOT NULL" +
+                                ")"
+                ).executeUpdate()),
+                new SchemaMigration(2, "Index the last nickname", connection -> connection.prepareStatement(
+                        "CREATE INDEX IF NOT EXISTS librepremium_data_last_nickname ON librepremium_data(LOWER(last_nickname))"
+                ).executeUpdate()),
+                new SchemaMigration(3, "Index the premium UUID", connection -> connection.prepareStatement(
+                        "CREATE INDEX IF NOT EXISTS librepremium_data_premium_uuid ON librepremium_data(premium_uuid)"
+                ).executeUpdate()),
+                new SchemaMigration(4, "Index the last seen date", connection -> connection.prepareStatement(
+                        "CREATE INDEX IF NOT EXISTS librepremium_data_last_seen ON librepremium_data(last_seen)"
+                ).executeUpdate()),
+                new SchemaMigration(5, "Add the row version", connection -> connection.prepareStatement(
+                        "ALTER TABLE librepremium_data ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0"
+                ).executeUpdate()),
+                new SchemaMigration(6, "Add the lowercase nickname", connection -> {
+                    connection.prepareStatement("ALTER TABLE librepremium_data ADD COLUMN IF NOT EXISTS last_nickname_lower VARCHAR(256)").executeUpdate();
+                    normalizeNicknames(connection);
+
+                    connection.prepareStatement("DROP INDEX IF EXISTS librepremium_data_last_nickname").executeUpdate();
+                    connection.prepareStatement("CREATE UNIQUE INDEX IF NOT EXISTS librepremium_data_last_nickname_lower ON librepremium_data(last_nickname_lower)").executeUpdate();
+                }),
+                new SchemaMigration(7, "Create the archive table", connection -> {
+                    connection.prepareStatement(
+                            "CREATE TABLE IF NOT EXISTS librepremium_archive(" +
+                                    "uuid UUID NOT NULL PRIMARY KEY," +
+                                    "premium_uuid UUID," +
+                                    "hashed_password VARCHAR(256)," +
+                                    "salt VARCHAR(256)," +
+                                    "algo VARCHAR(256)," +
+                                    "last_nickname VARCHAR(256) NOT NULL," +
+                                    "last_nickname_lower VARCHAR(256)," +
+                                    "joined TIMESTAMP NOT NULL," +
+                                    "last_seen TIMESTAMP NOT NULL," +
+                                    "version BIGINT NOT NULL DEFAULT 0" +
+                                    ")"
+                    ).executeUpdate();
+
+                    connection.prepareStatement("CREATE INDEX IF NOT EXISTS librepremium_archive_last_nickname_lower ON librepremium_archive(last_nickname_lower)").executeUpdate();
+                    connection.prepareStatement("CREATE INDEX IF NOT EXISTS librepremium_archive_premium_uuid ON librepremium_archive(premium_uuid)").executeUpdate();
+                })
+        ));
+
+        migrate(migrator);
+    }
+
+    @Override
+    protected void runTask(ConnectionTask task) {
+        try (var connection = dataSource.getConnection()) {
+            task.run(connection);
+        } catch (SQLException e) {
+            if (isConnectionError(e)) {
+                connectionLost(e);
+            } else {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    protected <T> T runFunction(ConnectionFunction<T> function) {
+        try (var connection = dataSource.getConnection()) {
+            return function.apply(connection);
+        } catch (SQLException e) {
+            if (isConnectionError(e)) {
+                connectionLost(e);
+            } else {
+                e.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    @Override
+    protected Object toDatabase(@Nullable UUID uuid) {
+        return uuid;
+    }
+
+    @Override
+    protected UUID readUUID(ResultSet rs, String column) throws SQLException {
+        return rs.getObject(column, UUID.class);
+    }
+
+    /**
+     * The driver only uses a cursor inside a transaction, the pool rolls the read-only transaction back once the connection is returned.
+     */
+    @Override
+    protected PreparedStatement prepareStreaming(Connection connection, String sql) throws SQLException {
+        connection.setAutoCommit(false);
+
+        var ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+        ps.setFetchSize(1000);
+
+        return ps;
+    }
+
+    @Override
+    protected String insertIgnoringConflicts(String table, String select) {
+        return "INSERT INTO %s(%s) %s ON CONFLICT DO NOTHING".formatted(table, COLUMNS, select);
+    }
+
+    @Override
+    protected void closeDatabase() {
+        dataSource.close();
+    }
+}
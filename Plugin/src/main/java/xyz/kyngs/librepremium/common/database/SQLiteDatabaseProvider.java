@@ -0,0 +1,200 @@
+package xyz.kyngs.librepremium.common.database;
+
+import xyz.kyngs.librepremium.api.Logger;
+import xyz.kyngs.librepremium.api.configuration.PluginConfiguration;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigration;
+import xyz.kyngs.librepremium.common.database.schema.SchemaMigrator;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An embedded, file based backend for networks with a single proxy. All queries share one connection,
+ * which keeps its prepared statements around, so lookups don't leave the process and don't re-parse SQL.
+ */
+public class SQLiteDatabaseProvider extends AuthenticDatabaseProvider {
+
+    // Far more than a single call prepares, so a statement is never closed while the call that prepared it still uses it
+    private static final int MAXIMUM_STATEMENTS = 128;
+
+    private final Connection connection;
+    private final ReentrantLock lock;
+    private final Map<String, PreparedStatement> statements;
+
+    public SQLiteDatabaseProvider(PluginConfiguration configuration, Logger logger, File file) throws SQLException {
+        super(configuration, logger);
+
+        lock = new ReentrantLock();
+        // Least recently used first, the IN lists of the bulk operations produce a statement per length, which must not pile up
+        statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= MAXIMUM_STATEMENTS) return false;
+
+                try {
+                    eldest.getValue().close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+
+                return true;
+            }
+        };
+
+        try {
+            // Plugin class loaders are not scanned by the DriverManager
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("The SQLite driver is missing", e);
+        }
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+        try (var statement = connection.createStatement()) {
+            // WAL only syncs on checkpoints, so with NORMAL synchronization a commit does not wait for the disk
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA busy_timeout=5000");
+        }
+
+        validateTables();
+    }
+
+    private void validateTables() {
+        var migrator = new SchemaMigrator(logger, SchemaMigrator.NO_LOCK, List.of(
+                new SchemaMigration(1, "Create the data table", connection -> connection.prepareStatement(
+                        "CREATE TABLE IF NOT EXISTS librepremium_data(" +
+                                "uuid BLOB NOT NULL PRIMARY KEY," +
+                                "premium_uuid BLOB," +
+                                "hashed_password TEXT," +
+                                "salt TEXT," +
+                                "algo TEXT," +
+                                // Nicknames are compared case-insensitively, like with the default MySQL collation
+                                "last_nickname TEXT NOT NULL COLLATE NOCASE," +
+                                "joined TIMESTAMP NOT NULL," +
+                                "last_seen TIMESTAMP NOT NULL" +
+                                ")"
+                ).executeUpdate()),
+                new SchemaMigration(2, "Index the last nickname", connection -> connection.prepareStatement(
+                        "CREATE INDEX IF NOT EXISTS librepremium_data_last_nickname ON librepremium_data(last_nickname)"
+                ).executeUpdate()),
+                new SchemaMigration(3, "Index the premium UUID", connection -> connection.prepareStatement(
+                        "CREATE INDEX IF NOT EXISTS librepremium_data_premium_uuid ON librepremium_data(premium_uuid)"
+                ).executeUpdate()),
+                new SchemaMigration(4, "Index the last seen date", connection -> connection.prepareStatement(
+                        "CREATE INDEX IF NOT EXISTS librepremium_data_last_seen ON librepremium_data(last_seen)"
+                ).executeUpdate()),
+                new SchemaMigration(5, "Add the row version", connection ->
+                        SchemaMigrator.addColumnIfAbsent(connection, "librepremium_data", "version", "INTEGER NOT NULL DEFAULT 0")
+                ),
+                new SchemaMigration(6, "Add the lowercase nickname", connection -> {
+                    SchemaMigrator.addColumnIfAbsent(connection, "librepremium_data", "last_nickname_lower", "TEXT");
+                    normalizeNicknames(connection);
+
+                    connection.prepareStatement("DROP INDEX IF EXISTS librepremium_data_last_nickname").executeUpdate();
+                    connection.prepareStatement("CREATE UNIQUE INDEX IF NOT EXISTS librepremium_data_last_nickname_lower ON librepremium_data(last_nickname_lower)").executeUpdate();
+                }),
+                new SchemaMigration(7, "Create the archive table", connection -> {
+                    connection.prepareStatement(
+                            "CREATE TABLE IF NOT EXISTS librepremium_archive(" +
+                                    "uuid BLOB NOT NULL PRIMARY KEY," +
+                                    "premium_uuid BLOB," +
+                                    "hashed_password TEXT," +
+                                    "salt TEXT," +
+                                    "algo TEXT," +
+                                    "last_nickname TEXT NOT NULL," +
+                                    "last_nickname_lower TEXT," +
+                                    "joined TIMESTAMP NOT NULL," +
+                                    "last_seen TIMESTAMP NOT NULL," +
+                                    "version INTEGER NOT NULL DEFAULT 0" +
+                                    ")"
+                    ).executeUpdate();
+
+                    connection.prepareStatement("CREATE INDEX IF NOT EXISTS librepremium_archive_last_nickname_lower ON librepremium_archive(last_nickname_lower)").executeUpdate();
+                    connection.prepareStatement("CREATE INDEX IF NOT EXISTS librepremium_archive_premium_uuid ON librepremium_archive(premium_uuid)").executeUpdate();
+                })
+        ));
+
+        migrate(migrator);
+    }
+
+    @Override
+    protected void runTask(ConnectionTask task) {
+        lock.lock();
+        try {
+            task.run(connection);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected <T> T runFunction(ConnectionFunction<T> function) {
+        lock.lock();
+        try {
+            return function.apply(connection);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Only called while holding the lock, so the statements can't be used by two threads at once.
+     */
+    @Override
+    protected PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        var ps = statements.get(sql);
+
+        if (ps == null || ps.isClosed()) {
+            ps = connection.prepareStatement(sql);
+            statements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+            ps.clearBatch();
+        }
+
+        return ps;
+    }
+
+    /**
+     * Streamed statements are not cached, the consumer may run other queries while the rows are read.
+     */
+    @Override
+    protected PreparedStatement prepareStreaming(Connection connection, String sql) throws SQLException {
+        return connection.prepareStatement(sql);
+    }
+
+    @Override
+    protected String insertIgnoringConflicts(String table, String select) {
+        return "INSERT OR IGNORE INTO %s(%s) %s".formatted(table, COLUMNS, select);
+    }
+
+    @Override
+    protected void closeDatabase() {
+        lock.lock();
+        try {
+            for (PreparedStatement statement : statements.values()) {
+                statement.close();
+            }
+
+            statements.clear();
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
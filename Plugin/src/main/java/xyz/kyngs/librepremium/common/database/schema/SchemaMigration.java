@@ -0,0 +1,22 @@
+package xyz.kyngs.librepremium.common.database.schema;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A single step of the schema history, steps are applied in the order of their versions and each of them is applied only once.
+ * Nevertheless, steps should be written in a way, that re-running them on an already migrated schema does no harm.
+ *
+ * @param version     the version the schema is at after this step, must be unique
+ * @param description short description shown in the console and stored in the version table
+ * @param step        the actual migration
+ * @author kyngs
+ */
+public record SchemaMigration(int version, String description, Step step) {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+}
@@ -0,0 +1,11 @@
+package xyz.kyngs.librepremium.common.database.schema;
+
+/**
+ * Thrown when the schema could not be brought up to date, the provider must not be used on a partially migrated schema.
+ */
+public class SchemaMigrationException extends RuntimeException {
+
+    public SchemaMigrationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
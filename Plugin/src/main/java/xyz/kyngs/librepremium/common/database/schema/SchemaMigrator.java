@@ -0,0 +1,163 @@
+package xyz.kyngs.librepremium.common.database.schema;
+
+import xyz.kyngs.librepremium.api.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Brings the schema up to date at startup, the current version is kept in {@link #VERSION_TABLE}.
+ *
+ * @author kyngs
+ */
+public class SchemaMigrator {
+
+    public static final String VERSION_TABLE = "librepremium_schema_version";
+    private static final String LOCK_NAME = "librepremium_schema_migration";
+
+    /**
+     * Multiple proxies sharing the database may start at the same time, only one of them may migrate.
+     */
+    public static final Lock MYSQL_LOCK = new Lock() {
+        @Override
+        public void acquire(Connection connection) throws SQLException {
+            var lock = connection.prepareStatement("SELECT GET_LOCK(?, 60)");
+            lock.setString(1, LOCK_NAME);
+
+            var lockResult = lock.executeQuery();
+
+            if (!lockResult.next() || lockResult.getInt(1) != 1)
+                throw new SQLException("Could not acquire the schema migration lock, is another proxy stuck migrating?");
+        }
+
+        @Override
+        public void release(Connection connection) throws SQLException {
+            var unlock = connection.prepareStatement("SELECT RELEASE_LOCK(?)");
+            unlock.setString(1, LOCK_NAME);
+            unlock.executeQuery();
+        }
+    };
+
+    public static final Lock POSTGRESQL_LOCK = new Lock() {
+        @Override
+        public void acquire(Connection connection) throws SQLException {
+            var lock = connection.prepareStatement("SELECT pg_advisory_lock(hashtext(?))");
+            lock.setString(1, LOCK_NAME);
+            lock.executeQuery();
+        }
+
+        @Override
+        public void release(Connection connection) throws SQLException {
+            var unlock = connection.prepareStatement("SELECT pg_advisory_unlock(hashtext(?))");
+            unlock.setString(1, LOCK_NAME);
+            unlock.executeQuery();
+        }
+    };
+
+    /**
+     * For embedded databases, which are only ever opened by a single proxy.
+     */
+    public static final Lock NO_LOCK = new Lock() {
+        @Override
+        public void acquire(Connection connection) {
+        }
+
+        @Override
+        public void release(Connection connection) {
+        }
+    };
+
+    private final Logger logger;
+    private final Lock lock;
+    private final List<SchemaMigration> migrations;
+
+    public SchemaMigrator(Logger logger, Lock lock, List<SchemaMigration> migrations) {
+        this.logger = logger;
+        this.lock = lock;
+        this.migrations = migrations.stream()
+                .sorted(Comparator.comparingInt(SchemaMigration::version))
+                .toList();
+
+        for (int i = 1; i < this.migrations.size(); i++) {
+            if (this.migrations.get(i).version() == this.migrations.get(i - 1).version())
+                throw new IllegalArgumentException("Duplicate schema version %d".formatted(this.migrations.get(i).version()));
+        }
+    }
+
+    /**
+     * Works on every database, unlike ADD COLUMN IF NOT EXISTS.
+     */
+    public static void addColumnIfAbsent(Connection connection, String table, String column, String definition) throws SQLException {
+        try (var columns = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+            if (columns.next()) return;
+        }
+
+        connection.prepareStatement("ALTER TABLE %s ADD COLUMN %s %s".formatted(table, column, definition)).executeUpdate();
+    }
+
+    /**
+     * Only works on MySQL, other databases should use CREATE INDEX IF NOT EXISTS.
+     */
+    public static boolean indexExists(Connection connection, String table, String index) throws SQLException {
+        var ps = connection.prepareStatement("SELECT 1 FROM information_schema.statistics WHERE table_schema=DATABASE() AND table_name=? AND index_name=? LIMIT 1");
+
+        ps.setString(1, table);
+        ps.setString(2, index);
+
+        return ps.executeQuery().next();
+    }
+
+    public static void createIndexIfAbsent(Connection connection, String table, String index, String columns) throws SQLException {
+        if (indexExists(connection, table, index)) return;
+
+        connection.prepareStatement("CREATE INDEX %s ON %s(%s)".formatted(index, table, columns)).executeUpdate();
+    }
+
+    public void migrate(Connection connection) throws SQLException {
+        connection.prepareStatement(
+                "CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + "(" +
+                        "version INT NOT NULL PRIMARY KEY," +
+                        "description VARCHAR(256) NOT NULL," +
+                        "applied TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                        ")"
+        ).executeUpdate();
+
+        lock.acquire(connection);
+
+        try {
+            var current = getCurrentVersion(connection);
+
+            for (SchemaMigration migration : migrations) {
+                if (migration.version() <= current) continue;
+
+                logger.info("Migrating the database schema to version %d: %s".formatted(migration.version(), migration.description()));
+
+                migration.step().apply(connection);
+
+                var ps = connection.prepareStatement("INSERT INTO " + VERSION_TABLE + "(version, description) VALUES (?, ?)");
+
+                ps.setInt(1, migration.version());
+                ps.setString(2, migration.description());
+
+                ps.executeUpdate();
+            }
+        } finally {
+            lock.release(connection);
+        }
+    }
+
+    private int getCurrentVersion(Connection connection) throws SQLException {
+        var rs = connection.prepareStatement("SELECT MAX(version) FROM " + VERSION_TABLE).executeQuery();
+
+        return rs.next() ? rs.getInt(1) : 0;
+    }
+
+    public interface Lock {
+        void acquire(Connection connection) throws SQLException;
+
+        void release(Connection connection) throws SQLException;
+    }
+
+}
@@ -1,6 +1,7 @@
 package xyz.kyngs.librepremium.common.listener;
 
 import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.Component;
 import org.jetbrains.annotations.Nullable;
 import xyz.kyngs.librepremium.api.database.User;
 import xyz.kyngs.librepremium.api.event.events.AuthenticatedEvent;
@@ -9,6 +10,7 @@ import xyz.kyngs.librepremium.api.premium.PremiumException;
 import xyz.kyngs.librepremium.api.premium.PremiumUser;
 import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 import xyz.kyngs.librepremium.common.command.InvalidCommandArgument;
+import xyz.kyngs.librepremium.common.database.DatabaseUnavailableException;
 import xyz.kyngs.librepremium.common.event.events.AuthenticAuthenticatedEvent;
 import xyz.kyngs.librepremium.common.event.events.AuthenticPremiumLoginSwitchEvent;
 
@@ -16,6 +18,8 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Pattern;
 
 public class AuthenticListeners<P extends AuthenticLibrePremium> {
@@ -30,8 +34,11 @@ public class AuthenticListeners<P extends AuthenticLibrePremium> {
     }
 
     protected void onPostLogin(UUID uuid, Audience audience) {
-        if (plugin.getDatabaseProvider().getByUUID(uuid).autoLoginEnabled()) {
-            plugin.getEventProvider().fire(AuthenticatedEvent.class, new AuthenticAuthenticatedEvent(plugin.getDatabaseProvider().getByUUID(uuid), audience));
+        // The user has just been loaded during the pre-login, so this is served from the cache
+        var user = plugin.getDatabaseProvider().getByUUID(uuid);
+
+        if (user.autoLoginEnabled()) {
+            plugin.getEventProvider().fire(AuthenticatedEvent.class, new AuthenticAuthenticatedEvent(user, audience));
             return;
         }
         plugin.getAuthorizationProvider().startTracking(uuid, audience);
@@ -40,16 +47,78 @@ public class AuthenticListeners<P extends AuthenticLibrePremium> {
         plugin.getAuthorizationProvider().stopTracking(uuid);
     }
 
-    protected PreLoginResult onPreLogin(String username) {
+    protected CompletableFuture<PreLoginResult> onPreLogin(String username) {
         if (username.length() > 16 || !NAME_PATTERN.matcher(username).matches()) {
-            return new PreLoginResult(PreLoginState.DENIED, plugin.getMessages().getMessage("kick-illegal-username"));
+            return CompletableFuture.completedFuture(new PreLoginResult(PreLoginState.DENIED, plugin.getMessages().getMessage("kick-illegal-username")));
+        }
+
+        return plugin.getPremiumProvider().getUserForNameAsync(username)
+                .thenCompose(premium -> validatePreLogin(username, premium))
+                .exceptionally(this::handlePreLoginException);
+    }
+
+    private CompletableFuture<PreLoginResult> validatePreLogin(String username, @Nullable PremiumUser premium) {
+        var database = plugin.getDatabaseProvider();
+
+        if (premium == null) {
+            return checkAndValidateByName(username, null, true)
+                    .thenCompose(user -> {
+                        //noinspection ConstantConditions //kyngs: There's no way IntelliJ is right
+                        if (user.getPremiumUUID() != null) {
+                            user.setPremiumUUID(null);
+                            plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, Audience.empty()));
+                        }
+
+                        return database.saveUserAsync(user);
+                    })
+                    .thenApply(v -> new PreLoginResult(PreLoginState.FORCE_OFFLINE, null));
         }
 
-        PremiumUser premium;
+        var premiumID = premium.uuid();
+
+        return database.getByPremiumUUIDAsync(premiumID)
+                .thenCompose(user -> {
+                    if (user == null) {
+                        return checkAndValidateByName(username, premiumID, true)
+                                .thenCompose(database::saveUserAsync)
+                                .thenApply(v -> new PreLoginResult(PreLoginState.FORCE_OFFLINE, null));
+                    }
+
+                    return checkAndValidateByName(username, premiumID, false)
+                            .thenCompose(byName -> {
+                                if (byName != null && user != byName) {
+                                    // Oh, no
+                                    return CompletableFuture.completedFuture(new PreLoginResult(PreLoginState.DENIED, plugin.getMessages().getMessage("kick-name-mismatch",
+                                            "%nickname%", username
+                                    )));
+                                }
+
+                                var result = new PreLoginResult(PreLoginState.FORCE_ONLINE, null);
+
+                                if (!user.getLastNickname().contentEquals(premium.name())) {
+                                    user.setLastNickname(premium.name());
+
+                                    return database.saveUserAsync(user)
+                                            .thenApply(v -> result);
+                                }
+
+                                return CompletableFuture.completedFuture(result);
+                            });
+                });
+    }
 
-        try {
-            premium = plugin.getPremiumProvider().getUserForName(username);
-        } catch (PremiumException e) {
+    private PreLoginResult handlePreLoginException(Throwable throwable) {
+        var cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+
+        if (cause instanceof InvalidCommandArgument e) {
+            return new PreLoginResult(PreLoginState.DENIED, e.getUserFuckUp());
+        }
+
+        if (cause instanceof DatabaseUnavailableException) {
+            return new PreLoginResult(PreLoginState.DENIED, plugin.getMessages().getMessage("error-database-unavailable"));
+        }
+
+        if (cause instanceof PremiumException e) {
             var message = switch (e.getIssue()) {
                 case THROTTLED -> plugin.getMessages().getMessage("premium-error-throttled-kick");
                 default -> {
@@ -62,102 +131,69 @@ public class AuthenticListeners<P extends AuthenticLibrePremium> {
             return new PreLoginResult(PreLoginState.DENIED, message);
         }
 
-        if (premium == null) {
-            User user;
-            try {
-                user = checkAndValidateByName(username, null, true);
-            } catch (InvalidCommandArgument e) {
-                return new PreLoginResult(PreLoginState.DENIED, e.getUserFuckUp());
-            }
+        throw cause instanceof RuntimeException runtime ? runtime : new CompletionException(cause);
+    }
 
-            //noinspection ConstantConditions //kyngs: There's no way IntelliJ is right
-            if (user.getPremiumUUID() != null) {
-                user.setPremiumUUID(null);
-                plugin.getEventProvider().fire(PremiumLoginSwitchEvent.class, new AuthenticPremiumLoginSwitchEvent(user, Audience.empty()));
-            }
+    /**
+     * Handles an exception no part of the login has recovered from, the login must then be denied.
+     *
+     * @return The message the player is disconnected with
+     */
+    protected Component handleLoginFailure(String username, Throwable throwable) {
+        var cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
 
-            plugin.getDatabaseProvider().saveUser(user);
-        } else {
-            var premiumID = premium.uuid();
-            var user = plugin.getDatabaseProvider().getByPremiumUUID(premiumID);
-
-            if (user == null) {
-                User userByName;
-                try {
-                    userByName = checkAndValidateByName(username, premiumID, true);
-                } catch (InvalidCommandArgument e) {
-                    return new PreLoginResult(PreLoginState.DENIED, e.getUserFuckUp());
-                }
-
-                plugin.getDatabaseProvider().saveUser(userByName);
-            } else {
-                User byName;
-                try {
-                    byName = checkAndValidateByName(username, premiumID, false);
-                } catch (InvalidCommandArgument e) {
-                    return new PreLoginResult(PreLoginState.DENIED, e.getUserFuckUp());
-                }
+        if (cause instanceof DatabaseUnavailableException) {
+            return plugin.getMessages().getMessage("error-database-unavailable");
+        }
 
-                if (byName != null && user != byName) {
-                    // Oh, no
-                    return new PreLoginResult(PreLoginState.DENIED, plugin.getMessages().getMessage("kick-name-mismatch",
-                            "%nickname%", username
-                    ));
-                }
+        plugin.getLogger().error("An unexpected exception occurred while processing the login of %s, denying the login".formatted(username));
+        cause.printStackTrace();
 
-                if (!user.getLastNickname().contentEquals(premium.name())) {
-                    user.setLastNickname(premium.name());
+        return plugin.getMessages().getMessage("error-unknown");
+    }
 
-                    plugin.getDatabaseProvider().saveUser(user);
+    private CompletableFuture<User> checkAndValidateByName(String username, @Nullable UUID premiumID, boolean generate) {
+        return plugin.getDatabaseProvider().getByNameAsync(username).thenCompose(user -> {
+            if (user != null) {
+                user.setLastSeen(Timestamp.valueOf(LocalDateTime.now()));
+                if (!user.getLastNickname().contentEquals(username)) {
+                    throw new InvalidCommandArgument(plugin.getMessages().getMessage("kick-invalid-case-username",
+                            "%username%", user.getLastNickname()
+                    ));
                 }
 
-                return new PreLoginResult(PreLoginState.FORCE_ONLINE, null);
+                return CompletableFuture.completedFuture(user);
             }
-        }
-
-        return new PreLoginResult(PreLoginState.FORCE_OFFLINE, null);
-    }
 
-    private User checkAndValidateByName(String username, @Nullable UUID premiumID, boolean generate) throws InvalidCommandArgument {
-        var user = plugin.getDatabaseProvider().getByName(username);
+            if (!generate) return CompletableFuture.completedFuture(null);
 
-        if (user != null) {
-            user.setLastSeen(Timestamp.valueOf(LocalDateTime.now()));
-            if (!user.getLastNickname().contentEquals(username)) {
-                throw new InvalidCommandArgument(plugin.getMessages().getMessage("kick-invalid-case-username",
-                        "%username%", user.getLastNickname()
-                ));
-            }
-        } else if (generate) {
             var newID = plugin.generateNewUUID(
                     username,
                     premiumID
             );
 
-            var conflictingUser = plugin.getDatabaseProvider().getByUUID(newID);
-
-            if (conflictingUser != null) {
-                throw new InvalidCommandArgument(plugin.getMessages().getMessage("kick-occupied-username",
-                        "%username%", conflictingUser.getLastNickname()
-                ));
-            }
-
-            user = new User(
-                    newID,
-                    null,
-                    null,
-                    username,
-                    Timestamp.valueOf(LocalDateTime.now()),
-                    Timestamp.valueOf(LocalDateTime.now())
-            );
-        } else return null;
+            return plugin.getDatabaseProvider().getByUUIDAsync(newID).thenApply(conflictingUser -> {
+                if (conflictingUser != null) {
+                    throw new InvalidCommandArgument(plugin.getMessages().getMessage("kick-occupied-username",
+                            "%username%", conflictingUser.getLastNickname()
+                    ));
+                }
 
-        return user;
+                return new User(
+                        newID,
+                        null,
+                        null,
+                        username,
+                        Timestamp.valueOf(LocalDateTime.now()),
+                        Timestamp.valueOf(LocalDateTime.now())
+                );
+            });
+        });
     }
 
     protected String chooseServer(UUID playerUUID, Audience audience) throws NoSuchElementException {
         var user = plugin.getDatabaseProvider().getByUUID(playerUUID);
-        if (plugin.getDatabaseProvider().getByUUID(playerUUID).autoLoginEnabled()) {
+        if (user.autoLoginEnabled()) {
             return plugin.chooseLobby(user, audience);
         } else {
             return plugin.getLimboServer(audience, user);
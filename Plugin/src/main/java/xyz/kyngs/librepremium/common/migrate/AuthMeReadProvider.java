@@ -11,9 +11,8 @@ import xyz.kyngs.librepremium.common.util.GeneralUtil;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.Collection;
-import java.util.HashSet;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class AuthMeReadProvider extends MySQLReadProvider {
     public AuthMeReadProvider(EasyDB<MySQL, Connection, SQLException> easyDB, String tableName, Logger logger) {
@@ -36,14 +35,12 @@ public class AuthMeReadProvider extends MySQLReadProvider {
     }
 
     @Override
-    public Collection<User> getAllUsers() {
-        return easyDB.runFunctionSync(connection -> {
-            var ps = connection.prepareStatement("SELECT * FROM " + tableName);
+    public void forEachUser(Consumer<User> consumer) {
+        easyDB.runTaskSync(connection -> {
+            var ps = prepareStreaming(connection, "SELECT * FROM " + tableName);
 
             var rs = ps.executeQuery();
 
-            var users = new HashSet<User>();
-
             while (rs.next()) {
                 try {
                     var nickname = rs.getString("realname");
@@ -63,7 +60,7 @@ public class AuthMeReadProvider extends MySQLReadProvider {
                         password = CryptoUtil.convertFromBCryptRaw(passwordRaw);
                     }
 
-                    users.add(
+                    consumer.accept(
                             new User(
                                     GeneralUtil.getCrackedUUIDFromName(nickname),
                                     null,
@@ -78,8 +75,6 @@ public class AuthMeReadProvider extends MySQLReadProvider {
                     logger.error("Failed to read user from AuthMe db, omitting");
                 }
             }
-
-            return users;
         });
     }
 }
@@ -9,9 +9,8 @@ import xyz.kyngs.librepremium.common.util.GeneralUtil;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Collection;
-import java.util.HashSet;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class JPremiumReadProvider extends MySQLReadProvider {
 
@@ -35,14 +34,12 @@ public class JPremiumReadProvider extends MySQLReadProvider {
     }
 
     @Override
-    public Collection<User> getAllUsers() {
-        return easyDB.runFunctionSync(connection -> {
-            var ps = connection.prepareStatement("SELECT * FROM %s".formatted(tableName));
+    public void forEachUser(Consumer<User> consumer) {
+        easyDB.runTaskSync(connection -> {
+            var ps = prepareStreaming(connection, "SELECT * FROM %s".formatted(tableName));
 
             var rs = ps.executeQuery();
 
-            var users = new HashSet<User>();
-
             while (rs.next()) {
                 try {
                     var uniqueIdString = rs.getString("uniqueId");
@@ -81,7 +78,7 @@ public class JPremiumReadProvider extends MySQLReadProvider {
 
                     }
 
-                    users.add(new User(
+                    consumer.accept(new User(
                             GeneralUtil.fromUnDashedUUID(uniqueIdString),
                             premiumIdString == null ? null : GeneralUtil.fromUnDashedUUID(premiumIdString),
                             password,
@@ -94,9 +91,6 @@ public class JPremiumReadProvider extends MySQLReadProvider {
                     logger.error("Failed to read user from JPremium db, omitting");
                 }
             }
-
-            return users;
-
         });
     }
 }
@@ -4,9 +4,14 @@ import xyz.kyngs.easydb.EasyDB;
 import xyz.kyngs.easydb.provider.mysql.MySQL;
 import xyz.kyngs.librepremium.api.Logger;
 import xyz.kyngs.librepremium.api.database.ReadDatabaseProvider;
+import xyz.kyngs.librepremium.api.database.User;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 
 public abstract class MySQLReadProvider implements ReadDatabaseProvider {
 
@@ -19,4 +24,25 @@ public abstract class MySQLReadProvider implements ReadDatabaseProvider {
         this.tableName = tableName;
         this.logger = logger;
     }
+
+    /**
+     * Prepares a statement, which makes the MySQL driver stream the rows one by one instead of loading the whole result set.
+     * The connection cannot be used for anything else until the result set is fully read.
+     */
+    protected static PreparedStatement prepareStreaming(Connection connection, String sql) throws SQLException {
+        var ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+        ps.setFetchSize(Integer.MIN_VALUE);
+
+        return ps;
+    }
+
+    @Override
+    public Collection<User> getAllUsers() {
+        var users = new ArrayList<User>();
+
+        forEachUser(users::add);
+
+        return users;
+    }
 }
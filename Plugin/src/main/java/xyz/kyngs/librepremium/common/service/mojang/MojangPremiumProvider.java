@@ -2,72 +2,281 @@ package xyz.kyngs.librepremium.common.service.mojang;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import xyz.kyngs.librepremium.api.premium.PremiumException;
 import xyz.kyngs.librepremium.api.premium.PremiumProvider;
 import xyz.kyngs.librepremium.api.premium.PremiumUser;
 import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
 import xyz.kyngs.librepremium.common.util.GeneralUtil;
 
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.TimeUnit;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
+/**
+ * Looks up premium accounts using the Mojang API. All requests share a single HTTP client, so the connections to Mojang are kept alive and reused.
+ * Lookups are collected for a few milliseconds and resolved in bulk, up to 10 names per request.
+ */
 public class MojangPremiumProvider implements PremiumProvider {
 
+    private static final String API_URL = "https://api.mojang.com";
+    // The most names Mojang accepts in a single bulk request
+    private static final int BATCH_SIZE = 10;
+    private static final long BATCH_DELAY = 10;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    // Mojang rejects the whole bulk request if any of the names does not match
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_]{1,16}");
+
     private final Cache<String, PremiumUser> mojangCache;
+    private final Map<String, CompletableFuture<PremiumUser>> inFlight;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final URI bulkURI;
+    private final Duration requestTimeout;
+    private final Executor batchTimer;
+    private final Object batchLock;
+    private Map<String, CompletableFuture<PremiumUser>> batch;
 
     public MojangPremiumProvider() {
+        this(API_URL);
+    }
+
+    /**
+     * @param apiURL The base URL of the Mojang API
+     */
+    public MojangPremiumProvider(String apiURL) {
+        this(apiURL, REQUEST_TIMEOUT);
+    }
+
+    MojangPremiumProvider(String apiURL, Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        bulkURI = URI.create(apiURL + "/profiles/minecraft");
+        batchLock = new Object();
+        batch = new HashMap<>();
+
         mojangCache = Caffeine.newBuilder()
+                .recordStats()
                 .expireAfterWrite(20, TimeUnit.MINUTES)
                 .build();
+
+        inFlight = new ConcurrentHashMap<>();
+
+        var counter = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(
+                4,
+                4,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024),
+                runnable -> {
+                    var thread = new Thread(runnable, "LibrePremium-Mojang-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+
+        batchTimer = CompletableFuture.delayedExecutor(BATCH_DELAY, TimeUnit.MILLISECONDS, executor);
     }
 
+    public Cache<String, PremiumUser> getCache() {
+        return mojangCache;
+    }
+
+    /**
+     * Same as {@link #getUserForName(String)}, but never blocks the caller, the future is completed exceptionally with {@link PremiumException} on failure.
+     * Concurrent lookups of the same name share a single request and its outcome.
+     */
     @Override
-    public PremiumUser getUserForName(String name) throws PremiumException {
-        name = name.toLowerCase();
+    public CompletableFuture<PremiumUser> getUserForNameAsync(String name) {
+        // Can not belong to a premium account
+        if (!NAME_PATTERN.matcher(name).matches()) return CompletableFuture.completedFuture(null);
+
+        var key = name.toLowerCase(Locale.ROOT);
+        var cached = mojangCache.getIfPresent(key);
 
-        var cached = mojangCache.getIfPresent(name);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
 
-        if (cached != null) return cached;
+        var future = new CompletableFuture<PremiumUser>();
+        var existing = inFlight.putIfAbsent(key, future);
 
-        var get = getUserInternally(name);
+        // A copy, so that a caller completing or cancelling its future does not affect the others
+        if (existing != null) return existing.copy();
 
-        if (get == null) return null;
+        future.whenComplete((user, throwable) -> inFlight.remove(key, future));
 
-        mojangCache.put(name, get);
+        enqueue(key, future);
 
-        return get;
+        return future.copy();
     }
 
-    private PremiumUser getUserInternally(String name) throws PremiumException {
+    /**
+     * Adds the name to the current batch. The batch is sent once it is full, or once the first name has waited for {@link #BATCH_DELAY} milliseconds.
+     */
+    private void enqueue(String key, CompletableFuture<PremiumUser> future) {
+        Map<String, CompletableFuture<PremiumUser>> full = null;
+
+        synchronized (batchLock) {
+            if (batch.isEmpty()) batchTimer.execute(this::sendBatch);
+
+            batch.put(key, future);
+
+            if (batch.size() >= BATCH_SIZE) {
+                full = batch;
+                batch = new HashMap<>();
+            }
+        }
+
+        if (full != null) send(full);
+    }
+
+    private void sendBatch() {
+        Map<String, CompletableFuture<PremiumUser>> current;
+
+        synchronized (batchLock) {
+            // Has already been sent, because it filled up
+            if (batch.isEmpty()) return;
+
+            current = batch;
+            batch = new HashMap<>();
+        }
+
+        send(current);
+    }
+
+    /**
+     * Sends the batch, every future of the batch is completed once it finishes, even if it fails unexpectedly.
+     */
+    private void send(Map<String, CompletableFuture<PremiumUser>> batch) {
         try {
-            var connection = (HttpURLConnection) new URL("https://api.mojang.com/users/profiles/minecraft/" + name).openConnection();
-
-            return switch (connection.getResponseCode()) {
-                case 429 ->
-                        throw new PremiumException(PremiumException.Issue.THROTTLED, GeneralUtil.readInput(connection.getErrorStream()));
-                case 204 -> null;
-                case 400 ->
-                        throw new PremiumException(PremiumException.Issue.UNDEFINED, GeneralUtil.readInput(connection.getErrorStream()));
-                case 200 -> {
-                    var data = AuthenticLibrePremium.GSON.fromJson(new InputStreamReader(connection.getInputStream()), JsonObject.class);
-
-                    var id = data.get("id").getAsString();
-                    var demo = data.get("demo");
-
-                    yield demo != null ? null : new PremiumUser(
-                            GeneralUtil.fromUnDashedUUID(id),
-                            data.get("name").getAsString()
-                    );
-                }
-                default ->
-                        throw new PremiumException(PremiumException.Issue.SERVER_EXCEPTION, GeneralUtil.readInput(connection.getErrorStream()));
-            };
-        } catch (IOException e) {
+            var names = new JsonArray();
+
+            batch.keySet().forEach(names::add);
+
+            var request = HttpRequest.newBuilder(bulkURI)
+                    .timeout(requestTimeout)
+                    .header("Accept", "application/json")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(AuthenticLibrePremium.GSON.toJson(names)))
+                    .build();
+
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, throwable) -> {
+                        if (throwable != null) {
+                            fail(batch, throwable);
+                            return;
+                        }
+
+                        try {
+                            // One of the names has been rejected, look them up one by one, so that it does not fail the others
+                            if (response.statusCode() == 400 && batch.size() > 1) {
+                                batch.forEach((name, future) -> send(Map.of(name, future)));
+                                return;
+                            }
+
+                            var users = parse(response);
+
+                            batch.forEach((name, future) -> {
+                                var user = users.get(name);
+
+                                if (user != null) mojangCache.put(name, user);
+
+                                future.complete(user);
+                            });
+                        } catch (Exception e) {
+                            fail(batch, e);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    /**
+     * Completes the futures of the batch which have not been completed yet exceptionally.
+     */
+    private static void fail(Map<String, CompletableFuture<PremiumUser>> batch, Throwable throwable) {
+        var cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        var exception = cause instanceof PremiumException premiumException
+                ? premiumException
+                : new PremiumException(PremiumException.Issue.UNDEFINED, cause instanceof Exception e ? e : new Exception(cause));
+
+        batch.values().forEach(future -> future.completeExceptionally(exception));
+    }
+
+    public void disable() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public PremiumUser getUserForName(String name) throws PremiumException {
+        try {
+            return getUserForNameAsync(name).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PremiumException premiumException) throw premiumException;
+
+            throw new PremiumException(PremiumException.Issue.UNDEFINED, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new PremiumException(PremiumException.Issue.UNDEFINED, e);
         }
     }
+
+    /**
+     * @return The found premium users by their lowercase names, names that are missing do not belong to a premium account
+     */
+    private static Map<String, PremiumUser> parse(HttpResponse<String> response) throws PremiumException {
+        return switch (response.statusCode()) {
+            case 429 -> throw new PremiumException(PremiumException.Issue.THROTTLED, response.body());
+            case 204, 404 -> Map.of();
+            case 400 -> throw new PremiumException(PremiumException.Issue.UNDEFINED, response.body());
+            case 200 -> {
+                JsonArray data;
+
+                try {
+                    data = AuthenticLibrePremium.GSON.fromJson(response.body(), JsonArray.class);
+                } catch (RuntimeException e) {
+                    throw new PremiumException(PremiumException.Issue.UNDEFINED, e);
+                }
+
+                var users = new HashMap<String, PremiumUser>();
+
+                if (data == null) yield users;
+
+                for (JsonElement element : data) {
+                    var profile = element.getAsJsonObject();
+
+                    if (profile.get("demo") != null) continue;
+
+                    var name = profile.get("name").getAsString();
+
+                    users.put(name.toLowerCase(Locale.ROOT), new PremiumUser(
+                            GeneralUtil.fromUnDashedUUID(profile.get("id").getAsString()),
+                            name
+                    ));
+                }
+
+                yield users;
+            }
+            default -> throw new PremiumException(PremiumException.Issue.SERVER_EXCEPTION, response.body());
+        };
+    }
 }
@@ -20,6 +20,7 @@ public class RateLimiter<T> {
     public RateLimiter(long amount, TimeUnit unit) {
         expiring = Caffeine.newBuilder()
                 .ticker(Ticker.systemTicker())
+                .recordStats()
                 .expireAfterWrite(amount, unit)
                 .build();
     }
@@ -37,4 +38,8 @@ public class RateLimiter<T> {
         return wasLimited.get();
     }
 
+    public Cache<T, Object> getCache() {
+        return expiring;
+    }
+
 }
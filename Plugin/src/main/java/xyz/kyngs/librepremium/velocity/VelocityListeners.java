@@ -1,20 +1,30 @@
 package xyz.kyngs.librepremium.velocity;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.ResultedEvent;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.LoginEvent;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
 import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.event.player.GameProfileRequestEvent;
 import com.velocitypowered.api.event.player.PlayerChooseInitialServerEvent;
 import com.velocitypowered.api.util.GameProfile;
+import net.kyori.adventure.text.Component;
 import xyz.kyngs.librepremium.common.listener.AuthenticListeners;
 
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class VelocityListeners extends AuthenticListeners<VelocityLibrePremium> {
+    // The messages of the logins whose profile request failed, by the username
+    private final Map<String, Component> failedProfiles;
+
     public VelocityListeners(VelocityLibrePremium plugin) {
         super(plugin);
+        failedProfiles = new ConcurrentHashMap<>();
     }
 
     @Subscribe(order = PostOrder.LAST)
@@ -28,31 +38,62 @@ public class VelocityListeners extends AuthenticListeners<VelocityLibrePremium>
     }
 
     @Subscribe(order = PostOrder.FIRST)
-    public void onProfileRequest(GameProfileRequestEvent event) {
-        var profile = plugin.getDatabaseProvider().getByName(event.getUsername());
+    public EventTask onProfileRequest(GameProfileRequestEvent event) {
+        var username = event.getUsername();
+
+        return EventTask.resumeWhenComplete(plugin.getDatabaseProvider().getByNameAsync(username)
+                .handle((profile, throwable) -> {
+                    if (throwable == null && profile == null) {
+                        throwable = new IllegalStateException("The user %s has not been created during the pre-login".formatted(username));
+                    }
 
-        var gProfile = event.getOriginalProfile();
+                    // The profile request can't be denied, the login is denied right after it instead
+                    if (throwable != null) {
+                        failedProfiles.put(username, handleLoginFailure(username, throwable));
+                        return null;
+                    }
 
-        event.setGameProfile(new GameProfile(profile.getUuid(), gProfile.getName(), gProfile.getProperties()));
+                    failedProfiles.remove(username);
+
+                    var gProfile = event.getOriginalProfile();
+
+                    event.setGameProfile(new GameProfile(profile.getUuid(), gProfile.getName(), gProfile.getProperties()));
+                    return null;
+                })
+        );
     }
 
-    @Subscribe(order = PostOrder.LAST)
-    public void onPreLogin(PreLoginEvent event) {
-        if (!event.getResult().isAllowed()) return;
+    @Subscribe(order = PostOrder.FIRST)
+    public void onLogin(LoginEvent event) {
+        var message = failedProfiles.remove(event.getPlayer().getUsername());
 
-        var result = onPreLogin(event.getUsername());
+        if (message != null) event.setResult(ResultedEvent.ComponentResult.denied(message));
+    }
 
-        event.setResult(
-                switch (result.state()) {
-                    case DENIED -> {
-                        assert result.message() != null;
-                        yield PreLoginEvent.PreLoginComponentResult.denied(result.message());
+    @Subscribe(order = PostOrder.LAST)
+    public EventTask onPreLogin(PreLoginEvent event) {
+        if (!event.getResult().isAllowed()) return null;
+
+        // Velocity holds the login until the future completes, without occupying any of its event threads
+        // An exceptionally completed future would let the player in, so every failure is turned into a denial
+        return EventTask.resumeWhenComplete(onPreLogin(event.getUsername())
+                .handle((result, throwable) -> {
+                    if (throwable != null) {
+                        event.setResult(PreLoginEvent.PreLoginComponentResult.denied(handleLoginFailure(event.getUsername(), throwable)));
+                        return null;
                     }
-                    case FORCE_ONLINE -> PreLoginEvent.PreLoginComponentResult.forceOnlineMode();
-                    case FORCE_OFFLINE -> PreLoginEvent.PreLoginComponentResult.forceOfflineMode();
-                }
-        );
 
+                    event.setResult(switch (result.state()) {
+                        case DENIED -> {
+                            assert result.message() != null;
+                            yield PreLoginEvent.PreLoginComponentResult.denied(result.message());
+                        }
+                        case FORCE_ONLINE -> PreLoginEvent.PreLoginComponentResult.forceOnlineMode();
+                        case FORCE_OFFLINE -> PreLoginEvent.PreLoginComponentResult.forceOfflineMode();
+                    });
+                    return null;
+                })
+        );
     }
 
     @Subscribe(order = PostOrder.LAST)
@@ -0,0 +1,214 @@
+package xyz.kyngs.librepremium.common.service.mojang;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.kyngs.librepremium.api.premium.PremiumException;
+import xyz.kyngs.librepremium.api.premium.PremiumUser;
+import xyz.kyngs.librepremium.common.AuthenticLibrePremium;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the provider against a local server which answers like the bulk profiles endpoint of the Mojang API.
+ */
+public class MojangPremiumProviderTest {
+
+    private static final UUID NOTCH = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final UUID JEB = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private MojangPremiumProvider provider;
+    private List<List<String>> requests;
+    private volatile Function<List<String>, Response> handler;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        requests = new ArrayList<>();
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+        server.createContext("/profiles/minecraft", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        provider = new MojangPremiumProvider("http://127.0.0.1:" + server.getAddress().getPort(), Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        provider.disable();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        var names = new ArrayList<String>();
+
+        for (JsonElement name : AuthenticLibrePremium.GSON.fromJson(body, JsonArray.class)) {
+            names.add(name.getAsString());
+        }
+
+        synchronized (requests) {
+            requests.add(names);
+        }
+
+        var response = handler.apply(names);
+        var bytes = response.body().getBytes(StandardCharsets.UTF_8);
+
+        // -1 sends no body at all, as Mojang does for 204
+        exchange.sendResponseHeaders(response.status(), bytes.length == 0 ? -1 : bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static String profile(UUID uuid, String name) {
+        return "{\"id\":\"%s\",\"name\":\"%s\"}".formatted(uuid.toString().replace("-", ""), name);
+    }
+
+    private PremiumException.Issue issueOf(String name) {
+        return assertThrows(PremiumException.class, () -> provider.getUserForName(name)).getIssue();
+    }
+
+    @Test
+    public void findsPremiumUser() throws PremiumException {
+        handler = names -> new Response(200, "[" + profile(NOTCH, "Notch") + "]");
+
+        var user = provider.getUserForName("notch");
+
+        assertNotNull(user);
+        assertEquals(NOTCH, user.uuid());
+        assertEquals("Notch", user.name());
+    }
+
+    @Test
+    public void cachesFoundUser() throws PremiumException {
+        handler = names -> new Response(200, "[" + profile(NOTCH, "Notch") + "]");
+
+        provider.getUserForName("Notch");
+        provider.getUserForName("notch");
+
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void treatsNoContentAsNotPremium() throws PremiumException {
+        handler = names -> new Response(204, "");
+
+        assertNull(provider.getUserForName("Notch"));
+    }
+
+    @Test
+    public void treatsNotFoundAsNotPremium() throws PremiumException {
+        handler = names -> new Response(404, "");
+
+        assertNull(provider.getUserForName("Notch"));
+    }
+
+    @Test
+    public void reportsThrottling() {
+        handler = names -> new Response(429, "{\"error\":\"TooManyRequestsException\"}");
+
+        assertEquals(PremiumException.Issue.THROTTLED, issueOf("Notch"));
+    }
+
+    @Test
+    public void reportsServerError() {
+        handler = names -> new Response(500, "");
+
+        assertEquals(PremiumException.Issue.SERVER_EXCEPTION, issueOf("Notch"));
+    }
+
+    @Test
+    public void timesOut() {
+        handler = names -> {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(3));
+            } catch (InterruptedException ignored) {
+            }
+            return new Response(204, "");
+        };
+
+        var exception = assertThrows(PremiumException.class, () -> provider.getUserForName("Notch"));
+
+        assertEquals(PremiumException.Issue.UNDEFINED, exception.getIssue());
+        assertInstanceOf(HttpTimeoutException.class, exception.getCause());
+    }
+
+    @Test
+    public void resolvesBatchAndSkipsDemoAccounts() throws ExecutionException, InterruptedException {
+        handler = names -> new Response(200, "[" + profile(NOTCH, "Notch") + ", " + profile(JEB, "jeb_").replace("}", ",\"demo\":true}") + "]");
+
+        var notch = provider.getUserForNameAsync("Notch");
+        var jeb = provider.getUserForNameAsync("jeb_");
+        var missing = provider.getUserForNameAsync("Missing");
+
+        assertEquals(NOTCH, notch.get().uuid());
+        assertNull(jeb.get());
+        assertNull(missing.get());
+
+        assertEquals(1, requests.size());
+        assertEquals(3, requests.get(0).size());
+    }
+
+    @Test
+    public void sharesConcurrentLookups() throws ExecutionException, InterruptedException {
+        handler = names -> new Response(200, "[" + profile(NOTCH, "Notch") + "]");
+
+        var first = provider.getUserForNameAsync("Notch");
+        var second = provider.getUserForNameAsync("notch");
+
+        PremiumUser user = first.get();
+
+        assertEquals(user, second.get());
+        assertEquals(List.of(List.of("notch")), requests);
+    }
+
+    @Test
+    public void answersInvalidNamesWithoutRequest() throws PremiumException {
+        handler = names -> new Response(400, "");
+
+        assertNull(provider.getUserForName("not a name!"));
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void retriesRejectedBatchOneByOne() {
+        handler = names -> names.contains("rejected")
+                ? new Response(400, "{\"error\":\"IllegalArgumentException\"}")
+                : new Response(200, "[" + profile(NOTCH, "Notch") + "]");
+
+        var notch = provider.getUserForNameAsync("Notch");
+        var rejected = provider.getUserForNameAsync("rejected");
+
+        assertDoesNotThrow(() -> assertEquals(NOTCH, notch.get().uuid()));
+
+        var exception = assertThrows(ExecutionException.class, rejected::get);
+
+        assertInstanceOf(PremiumException.class, exception.getCause());
+    }
+
+    private record Response(int status, String body) {
+    }
+
+}